@@ -1,6 +1,5 @@
 package HuffmanSource;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -15,6 +14,13 @@ import java.io.InputStream;
  * that are constructed from a File support <code>reset()</code>. However,
  * if constructed from an <code>InputStream</code> an object cannot be reset.
  * <P>
+ * Updated for version 3.0 to read the underlying stream a block at a time
+ * with <code>read(byte[])</code> and serve bits from a 64-bit window, so
+ * a synchronized stream such as a <code>ByteArrayInputStream</code> or
+ * <code>ProgressMonitorInputStream</code> is not called once per byte.
+ * <code>peekBits</code> and <code>skipBits</code> let a decoder look ahead
+ * without consuming bits.
+ * <P>
  * Any exceptions generated are rethrown as <code>RuntimeException</code> objects
  * so client code does not have to catch or rethrow them. (Unless the extension
  * of <code>InputStream</code> requires throwing as another type of exception, e.g.,
@@ -23,24 +29,22 @@ import java.io.InputStream;
  * @author Owen Astrachan
  * @version 1.0, July 2000
  * @version 2.0, October 2004
+ * @version 3.0, October 2026
  */
 
 public class BitInputStream extends InputStream {
 
     private InputStream     myInput;
+    private long            myWindow;
     private int             myBitCount;
-    private int             myBuffer;
+    private byte[]          myBlock;
+    private int             myBlockPos;
+    private int             myBlockEnd;
+    private boolean         myInputDone;
     private File            myFile;
-    
-    private static final int bmask[] = {
-        0x00, 0x01, 0x03, 0x07, 0x0f, 0x1f, 0x3f, 0x7f, 0xff,
-        0x1ff,0x3ff,0x7ff,0xfff,0x1fff,0x3fff,0x7fff,0xffff,
-        0x1ffff,0x3ffff,0x7ffff,0xfffff,0x1fffff,0x3fffff,
-        0x7fffff,0xffffff,0x1ffffff,0x3ffffff,0x7ffffff,
-        0xfffffff,0x1fffffff,0x3fffffff,0x7fffffff,0xffffffff
-    };
 
     private static final int BITS_PER_BYTE = 8;
+    private static final int BLOCK_SIZE = 1 << 13;
     
     /**
      * Construct a bit-at-a-time input stream from a file whose
@@ -59,6 +63,7 @@ public class BitInputStream extends InputStream {
      */
     public BitInputStream(File file) {
         myFile = file;  
+        myBlock = new byte[BLOCK_SIZE];
         try {
             reset();
         } catch (IOException e) {
@@ -74,6 +79,7 @@ public class BitInputStream extends InputStream {
     public BitInputStream(InputStream in) {
         myInput = in;
         myFile = null;
+        myBlock = new byte[BLOCK_SIZE];
     }
     
     /**
@@ -95,11 +101,14 @@ public class BitInputStream extends InputStream {
             throw new IOException("not resettable");
         } try {
             close();
-            myInput = new BufferedInputStream(new FileInputStream(myFile));
+            myInput = new FileInputStream(myFile);
         } catch (FileNotFoundException fnf){
             System.err.println("error opening " + myFile.getName() + " " + fnf);
         }
-        myBuffer = myBitCount = 0;
+        myWindow = 0;
+        myBitCount = 0;
+        myBlockPos = myBlockEnd = 0;
+        myInputDone = false;
     } 
 
     /**
@@ -116,6 +125,42 @@ public class BitInputStream extends InputStream {
         }
     }
 
+    /**
+     * Reads the next block of the underlying stream.
+     * @return false if the underlying stream has no more bytes
+     */
+    private boolean readBlock() throws IOException {
+        while (!myInputDone && myBlockPos == myBlockEnd) {
+            int count;
+            try {
+                count = myInput.read(myBlock, 0, myBlock.length);
+            } catch (IOException ioe) {
+                throw new IOException("bitreading trouble "+ioe);
+            }
+            if (count == -1) {
+                myInputDone = true;
+            } else {
+                myBlockPos = 0;
+                myBlockEnd = count;
+            }
+        }
+        return myBlockPos < myBlockEnd;
+    }
+
+    /**
+     * Moves whole bytes into the window until it holds more than 56 bits
+     * or the underlying stream ends.
+     */
+    private void fillWindow() throws IOException {
+        while (myBitCount <= Long.SIZE - BITS_PER_BYTE) {
+            if (myBlockPos == myBlockEnd && !readBlock()) {
+                return;
+            }
+            myWindow = (myWindow << BITS_PER_BYTE) | (myBlock[myBlockPos++] & 0xFF);
+            myBitCount += BITS_PER_BYTE;
+        }
+    }
+
     /**
      * Returns the number of bits requested as rightmost bits in
      * returned value, returns -1 if not enough bits available to
@@ -127,30 +172,60 @@ public class BitInputStream extends InputStream {
      */
 
     public int readBits(int howManyBits) throws IOException {
-        int retval = 0;
         if (myInput == null){
             return -1;
         }
-        
-        while (howManyBits > myBitCount){
-            retval |= ( myBuffer << (howManyBits - myBitCount) );
-            howManyBits -= myBitCount;
-            try {
-                if ( (myBuffer = myInput.read()) == -1) {
-                    return -1;
-                }
-            } catch (IOException ioe) {
-                throw new IOException("bitreading trouble "+ioe);
+        if (howManyBits > myBitCount) {
+            fillWindow();
+            if (howManyBits > myBitCount) {
+                myBitCount = 0;
+                return -1;
             }
-            myBitCount = BITS_PER_BYTE;
         }
+        myBitCount -= howManyBits;
+        return (int) (myWindow >>> myBitCount) & (int) ((1L << howManyBits) - 1);
+    }
 
-        if (howManyBits > 0) {
-            retval |= myBuffer >> (myBitCount - howManyBits);
-            myBuffer &= bmask[myBitCount - howManyBits];
-            myBitCount -= howManyBits;
+    /**
+     * Returns the next bits without consuming them. Past the end of
+     * the stream the missing bits are 0s, so use <code>skipBits</code>
+     * to find out whether the bits looked at were really there.
+     *
+     * @param howManyBits is the number of bits to look at (1-32)
+     * @return the next <code>howManyBits</code> bits as rightmost bits
+     * in the returned value
+     */
+    public int peekBits(int howManyBits) throws IOException {
+        if (howManyBits > myBitCount) {
+            if (myInput != null) {
+                fillWindow();
+            }
+            if (howManyBits > myBitCount) {
+                return (int) (myWindow << (howManyBits - myBitCount)) & (int) ((1L << howManyBits) - 1);
+            }
         }
-        return retval;
+        return (int) (myWindow >>> (myBitCount - howManyBits)) & (int) ((1L << howManyBits) - 1);
+    }
+
+    /**
+     * Consumes bits without returning them, usually after looking at
+     * them with <code>peekBits</code>.
+     *
+     * @param howManyBits is the number of bits to skip (1-32)
+     * @return <code>howManyBits</code>, or -1 if not enough bits left
+     */
+    public int skipBits(int howManyBits) throws IOException {
+        if (howManyBits > myBitCount) {
+            if (myInput != null) {
+                fillWindow();
+            }
+            if (howManyBits > myBitCount) {
+                myBitCount = 0;
+                return -1;
+            }
+        }
+        myBitCount -= howManyBits;
+        return howManyBits;
     }
 
     /**
@@ -161,7 +236,41 @@ public class BitInputStream extends InputStream {
     public int read() throws IOException {
         return readBits(BITS_PER_BYTE);
     }
-}
-
-
 
+    /**
+     * Reads up to <code>len</code> bytes into <code>b</code> starting at <code>off</code>.
+     * When the stream is at a byte boundary whole blocks are copied without
+     * going through the bit window.
+     * @return the number of bytes read, or -1 if there are none left
+     */
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (myInput == null) {
+            return -1;
+        }
+        int count = 0;
+        if (myBitCount % BITS_PER_BYTE != 0) {
+            while (count < len) {
+                int value = readBits(BITS_PER_BYTE);
+                if (value == -1) {
+                    break;
+                }
+                b[off + count++] = (byte) value;
+            }
+            return count == 0 ? -1 : count;
+        }
+        while (myBitCount > 0 && count < len) {
+            myBitCount -= BITS_PER_BYTE;
+            b[off + count++] = (byte) (myWindow >>> myBitCount);
+        }
+        while (count < len && (myBlockPos < myBlockEnd || readBlock())) {
+            int copied = Math.min(len - count, myBlockEnd - myBlockPos);
+            System.arraycopy(myBlock, myBlockPos, b, off + count, copied);
+            myBlockPos += copied;
+            count += copied;
+        }
+        return count == 0 ? -1 : count;
+    }
+}
@@ -1,13 +1,12 @@
 package HuffmanSource;
 
-import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
 /**
- * Write bits-at-a-time where the number of bits is between 1 and 32
+ * Write bits-at-a-time where the number of bits is between 1 and 57
  * Client programs must call <code>flush</code> or
  * <code>close</code> when finished writing or not all bits will be written.
  * This class is intended to be used with <code>BitInputStream</code> to
@@ -15,6 +14,11 @@ import java.io.OutputStream;
  * <P>
  * Updated for version 2.0 to extend java.io.OutputStream
  * <P>
+ * Updated for version 4.0 to collect bits in a 64-bit accumulator and
+ * finished bytes in an internal block that is passed to the underlying
+ * stream in bulk, so an unbuffered stream such as a <code>FileOutputStream</code>
+ * is not written a byte at a time.
+ * <P>
  * Any exceptions generated are rethrown as <code>RuntimeException</code> objects
  * so client code does not have to catch or rethrow them.
  * <P>
@@ -22,31 +26,53 @@ import java.io.OutputStream;
  * @version 1.0, July 2000
  * @version 2.0, October 2004
  * @version 3.0 April 2022
+ * @version 4.0 October 2026
  */
 public class BitOutputStream extends OutputStream {
-   
+
+    /**
+     * The most bits that can be written with one call to <code>writeBits</code>.
+     */
+    public static final int MAX_BITS_PER_WRITE = 57;
+
     private OutputStream  myOutput;
-    private int myBuffer;
-    private int myBitsToGo;
-    
-    private static final int bmask[] = {
-        0x00, 0x01, 0x03, 0x07, 0x0f, 0x1f, 0x3f, 0x7f, 0xff,
-        0x1ff,0x3ff,0x7ff,0xfff,0x1fff,0x3fff,0x7fff,0xffff,
-        0x1ffff,0x3ffff,0x7ffff,0xfffff,0x1fffff,0x3fffff,
-        0x7fffff,0xffffff,0x1ffffff,0x3ffffff,0x7ffffff,
-        0xfffffff,0x1fffffff,0x3fffffff,0x7fffffff,0xffffffff
-    };
+    private long myBits;
+    private int myBitCount;
+    private byte[] myBlock;
+    private int myBlockSize;
 
     private static final int BITS_PER_BYTE = 8;
+    private static final int BLOCK_SIZE = 1 << 14;
 
     /**
      * Required by OutputStream subclasses, write the low
-     * 8-bits to the underlying outputstream
+     * 8-bits to the underlying outputstream. Bits written by
+     * <code>writeBits</code> that do not yet fill a byte are not affected.
      */
     public void write(int b) throws IOException {
-        myOutput.write(b);
+        if (myBlockSize == myBlock.length) {
+            writeBlock();
+        }
+        myBlock[myBlockSize++] = (byte) b;
     }
-    
+
+    /**
+     * Write <code>len</code> bytes from <code>b</code> starting at <code>off</code>,
+     * the same as calling <code>write(int)</code> for each of them.
+     */
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (myBlockSize == myBlock.length) {
+                writeBlock();
+            }
+            int count = Math.min(len, myBlock.length - myBlockSize);
+            System.arraycopy(b, off, myBlock, myBlockSize, count);
+            myBlockSize += count;
+            off += count;
+            len -= count;
+        }
+    }
+
     /**
      * Create a stream that writes-through to the <code>OutputStream</code> object
      * passed as a parameter.
@@ -58,8 +84,10 @@ public class BitOutputStream extends OutputStream {
     }
     
     private void initialize() {
-        myBuffer = 0;
-        myBitsToGo = BITS_PER_BYTE;
+        myBits = 0;
+        myBitCount = 0;
+        myBlock = new byte[BLOCK_SIZE];
+        myBlockSize = 0;
     }
     
     /**
@@ -71,7 +99,7 @@ public class BitOutputStream extends OutputStream {
      */
     public BitOutputStream(String filename) {
         try {
-            myOutput = new BufferedOutputStream(new FileOutputStream(filename)); 
+            myOutput = new FileOutputStream(filename); 
         } catch (FileNotFoundException fnf) {
             throw new RuntimeException("could not create " + filename + " " + fnf);
         } catch(SecurityException se) {
@@ -80,6 +108,16 @@ public class BitOutputStream extends OutputStream {
         initialize();
     }
 
+    /**
+     * Passes the bytes collected so far to the underlying stream.
+     * @throws IOException if the underlying stream cannot be written
+     */
+    private void writeBlock() throws IOException {
+        if (myBlockSize > 0) {
+            myOutput.write(myBlock, 0, myBlockSize);
+            myBlockSize = 0;
+        }
+    }
 
     /**
      * Flushes bits not yet written, must be called by client
@@ -87,14 +125,15 @@ public class BitOutputStream extends OutputStream {
      * @throws RuntimeException if there's a problem writing bits
      */
     public void flush() {
-        if (myBitsToGo != BITS_PER_BYTE) {
-            try {
-                write( (myBuffer << myBitsToGo) );
-            } catch (java.io.IOException ioe){
-                throw new RuntimeException("error writing bits on flush " + ioe);
+        try {
+            if (myBitCount != 0) {
+                write((int) (myBits << (BITS_PER_BYTE - myBitCount)));
+                myBits = 0;
+                myBitCount = 0;
             }
-            myBuffer = 0;
-            myBitsToGo = BITS_PER_BYTE;
+            writeBlock();
+        } catch (java.io.IOException ioe){
+            throw new RuntimeException("error writing bits on flush " + ioe);
         }
                 
         try {
@@ -126,26 +165,33 @@ public class BitOutputStream extends OutputStream {
      * @throws RuntimeException if there's an I/O problem writing bits
      */
     public void writeBits(int howManyBits, int value) {
-        value &= bmask[howManyBits];  // only right most bits valid
+        writeBits(howManyBits, value & 0xFFFFFFFFL);
+    }
 
-        while (howManyBits >= myBitsToGo) {
-            myBuffer = (myBuffer << myBitsToGo) |
-                       (value >> (howManyBits - myBitsToGo));
+    /**
+     * Write specified number of bits from value to a file.
+     * @param howManyBits is number of bits to write (1-57)
+     * @param value is source of bits, rightmost bits are written
+     * @throws RuntimeException if there's an I/O problem writing bits
+     * @throws IllegalArgumentException if howManyBits is more than MAX_BITS_PER_WRITE
+     */
+    public void writeBits(int howManyBits, long value) {
+        if (howManyBits > MAX_BITS_PER_WRITE) {
+            throw new IllegalArgumentException("can write at most " + MAX_BITS_PER_WRITE
+                    + " bits at a time, not " + howManyBits);
+        }
+        // only right most bits valid
+        myBits = (myBits << howManyBits) | (value & ((1L << howManyBits) - 1));
+        myBitCount += howManyBits;
+        if (myBitCount >= BITS_PER_BYTE) {
             try {
-                write(myBuffer);    
+                while (myBitCount >= BITS_PER_BYTE) {
+                    myBitCount -= BITS_PER_BYTE;
+                    write((int) (myBits >>> myBitCount));
+                }
             } catch (java.io.IOException ioe){
                 throw new RuntimeException("error writing bits " + ioe);
             }
-
-            value &= bmask[howManyBits - myBitsToGo];
-            howManyBits -= myBitsToGo;
-            myBitsToGo = BITS_PER_BYTE;
-            myBuffer = 0;
-        }
-        
-        if (howManyBits > 0) {
-            myBuffer = (myBuffer << howManyBits) | value;
-            myBitsToGo -= howManyBits;
         }
     }
 }
@@ -0,0 +1,513 @@
+package HuffmanSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Compresses data in the STORE_BLOCKS format. The input is split into
+ * blocks of a fixed size. Each block is counted, gets its own Huffman
+ * code and is encoded on its own, so the blocks are spread over the
+ * threads of a ForkJoinPool. The blocks are written in input order.
+ * <P>
+ * After the magic number and STORE_BLOCKS the file holds the block size
+ * in BITS_PER_INT bits. Each block follows as its length in bytes in
+ * BITS_PER_INT bits and then the block itself: a canonical code header
+ * (see CanonicalCode), the codes of its bytes and PSEUDO_EOF, padded to a
+ * whole byte. A length of 0 ends the blocks. If raw blocks are allowed
+ * (see setStoreRaw) a block whose code would take up as many bytes as
+ * the block itself is stored unchanged instead, with RAW_BLOCK set in its
+ * length.
+ * <P>
+ * An index follows the blocks so a reader with random access can find and
+ * decode every block at once: the number of blocks in BITS_PER_INT bits,
+ * then for each block the bit offset of its length from the start of the
+ * file and the offset of its first byte in the uncompressed data, each in
+ * 64 bits, then the total uncompressed length in 64 bits. The file ends
+ * with the bit offset of the index in 64 bits and STORE_BLOCKS again.
+ * <P>
+ * compressStream writes the same blocks from a stream that can only be
+ * read once, but stops after the 0 length, since the number of blocks is
+ * not known until the input ends. Such a file is always read as a stream.
+ */
+public class BlockCompressor implements IHuffConstants {
+
+    /**
+     * The number of input bytes in a block unless set otherwise.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    /**
+     * The bit set in the length of a block that is stored unchanged.
+     */
+    static final int RAW_BLOCK = Integer.MIN_VALUE;
+
+    private final int blockSize;
+    private final int threadCount;
+    private final int maxCodeLength;
+    private int retainLimit;
+    private boolean storeRaw;
+    private ArrayList<int[]> blockLengths;
+    private ArrayList<byte[]> retainedBlocks;
+    private long retainedBytes;
+    private long bitsSaved;
+    private IHuffMetricsListener listener;
+    private long symbols;
+    private long codeBits;
+    private double entropyBits;
+
+    // Number of bits in a long, as stored in the index.
+    private static final int BITS_PER_LONG = 64;
+
+    /**
+     * Create a BlockCompressor.
+     * pre: blockSize > 0, threadCount > 0
+     * @param blockSize number of input bytes in each block
+     * @param threadCount number of threads that work on blocks at the same time
+     */
+    public BlockCompressor(int blockSize, int threadCount) {
+        this(blockSize, threadCount, CanonicalCode.MAX_LENGTH);
+    }
+
+    /**
+     * Create a BlockCompressor that keeps every code within a length limit.
+     * pre: blockSize > 0, threadCount > 0, 2 to the power maxCodeLength > ALPH_SIZE,
+     * maxCodeLength <= CanonicalCode.MAX_LENGTH
+     * @param blockSize number of input bytes in each block
+     * @param threadCount number of threads that work on blocks at the same time
+     * @param maxCodeLength the longest code allowed
+     */
+    public BlockCompressor(int blockSize, int threadCount, int maxCodeLength) {
+        if (blockSize <= 0 || threadCount <= 0) {
+            throw new IllegalArgumentException("block size and thread count must be positive");
+        }
+        this.blockSize = blockSize;
+        this.threadCount = threadCount;
+        this.maxCodeLength = maxCodeLength;
+    }
+
+    /**
+     * Set the most input bytes preCompress keeps in memory. When the whole
+     * input fits, compress encodes the kept blocks and does not read its
+     * input stream again.
+     * pre: limit >= 0
+     * @param limit the most bytes to keep, 0 to never keep the input
+     */
+    public void setRetainLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("retain limit must not be negative");
+        }
+        retainLimit = limit;
+    }
+
+    /**
+     * Set the listener told how long each phase of each block takes and
+     * what each file compressed to, or null to measure nothing. Block
+     * phases are reported from the threads that code the blocks.
+     * @param listener the listener to tell, may be null
+     */
+    public void setMetricsListener(IHuffMetricsListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Set whether a block that does not compress is stored unchanged, so
+     * it costs only its length and is copied instead of coded. Files with
+     * such blocks can't be read by decompressors older than this option.
+     * @param storeRaw true to store blocks that do not compress unchanged
+     */
+    public void setStoreRaw(boolean storeRaw) {
+        this.storeRaw = storeRaw;
+    }
+
+    /**
+     * Reads the input a block at a time and builds the code for each block.
+     * @param in is the stream which could be subsequently compressed
+     * @return number of bits saved by compression, counting every bit
+     * the STORE_BLOCKS file will hold
+     * @throws IOException if an error occurs while reading from the input file.
+     */
+    public long preCompress(InputStream in) throws IOException {
+        PreprocessEvent event = new PreprocessEvent();
+        event.begin();
+        blockLengths = new ArrayList<>();
+        retainedBlocks = retainLimit == 0 ? null : new ArrayList<>();
+        retainedBytes = 0;
+        symbols = 0;
+        codeBits = 0;
+        entropyBits = 0;
+        long inputBits = 0;
+        long outputBits = BITS_PER_INT * 4;
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        ArrayDeque<ForkJoinTask<BlockCode>> pending = new ArrayDeque<>();
+        try {
+            byte[] data = new byte[blockSize];
+            for (int read = in.readNBytes(data, 0, blockSize); read > 0;
+                    read = in.readNBytes(data, 0, blockSize)) {
+                inputBits += (long) read * BITS_PER_WORD;
+                byte[] block = data;
+                int length = read;
+                retainedBytes += length;
+                if (retainedBlocks != null && retainedBytes <= retainLimit) {
+                    retainedBlocks.add(block);
+                } else {
+                    retainedBlocks = null;
+                }
+                pending.add(pool.submit(() -> new BlockCode(block, length, maxCodeLength,
+                        storeRaw, listener)));
+                if (pending.size() == threadCount * 2) {
+                    outputBits += keepCode(pending.poll().join());
+                }
+                data = new byte[blockSize];
+            }
+            while (!pending.isEmpty()) {
+                outputBits += keepCode(pending.poll().join());
+            }
+        } finally {
+            pool.shutdown();
+            in.close();
+        }
+        outputBits += BITS_PER_INT + (long) blockLengths.size() * BITS_PER_LONG * 2
+                + BITS_PER_LONG * 2 + BITS_PER_INT;
+        bitsSaved = inputBits - outputBits;
+        event.end();
+        if (event.shouldCommit()) {
+            event.headerFormat = STORE_BLOCKS;
+            event.inputSize = inputBits / BITS_PER_WORD;
+            event.symbols = symbols;
+            event.bitsSaved = bitsSaved;
+            event.commit();
+        }
+        return bitsSaved;
+    }
+
+    /**
+     * Compresses input to output, where the same input has previously
+     * been pre-processed via <code>preCompress</code>. If preCompress kept
+     * the whole input, the kept blocks are encoded and <tt>in</tt> is closed
+     * without being read.
+     * @param in is the stream being compressed
+     * @param out is bound to a file/stream to which bits are written
+     * @param force if this is true create the output file even if it is larger than the input file.
+     * @return the number of bits written, or the negative number of bits saved
+     * if nothing was written
+     * @throws IOException if an error occurs while reading from the input file or
+     * writing to the output file.
+     */
+    public long compress(InputStream in, OutputStream out, boolean force) throws IOException {
+        if (bitsSaved < 0 && !force) {
+            return bitsSaved;
+        }
+        CompressEvent event = new CompressEvent();
+        event.begin();
+        BitOutputStream output = new BitOutputStream(out);
+        output.writeBits(BITS_PER_INT, MAGIC_NUMBER);
+        output.writeBits(BITS_PER_INT, STORE_BLOCKS);
+        output.writeBits(BITS_PER_INT, blockSize);
+        long count = BITS_PER_INT * 3;
+        long[] blockOffsets = new long[blockLengths.size()];
+        long[] dataOffsets = new long[blockLengths.size()];
+        long dataLength = 0;
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        ArrayDeque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>();
+        try {
+            int blocksWritten = 0;
+            for (int blockIndex = 0; ; blockIndex++) {
+                byte[] block;
+                int length;
+                if (retainedBlocks != null) {
+                    // the whole input was kept by preCompress
+                    if (blockIndex == retainedBlocks.size()) {
+                        break;
+                    }
+                    block = retainedBlocks.get(blockIndex);
+                    length = (int) Math.min(blockSize, retainedBytes - (long) blockIndex * blockSize);
+                } else {
+                    block = new byte[blockSize];
+                    length = in.readNBytes(block, 0, blockSize);
+                    if (length == 0) {
+                        break;
+                    }
+                }
+                if (blockIndex == blockLengths.size()) {
+                    throw new IOException("input is longer than the preprocessed input");
+                }
+                int[] lengths = blockLengths.get(blockIndex);
+                dataOffsets[blockIndex] = dataLength;
+                dataLength += length;
+                pending.add(pool.submit(() -> lengths == null ? Arrays.copyOf(block, length)
+                        : encodeBlock(block, length, lengths, listener)));
+                if (pending.size() == threadCount * 2) {
+                    blockOffsets[blocksWritten] = count;
+                    count += writeBlock(pending.poll().join(),
+                            blockLengths.get(blocksWritten++) == null, output);
+                }
+            }
+            while (!pending.isEmpty()) {
+                blockOffsets[blocksWritten] = count;
+                count += writeBlock(pending.poll().join(),
+                        blockLengths.get(blocksWritten++) == null, output);
+            }
+        } finally {
+            pool.shutdown();
+            in.close();
+            retainedBlocks = null;
+        }
+        output.writeBits(BITS_PER_INT, 0);
+        count += BITS_PER_INT;
+        count += writeIndex(blockOffsets, dataOffsets, dataLength, count, output);
+        output.close();
+        finished(event, dataLength, count);
+        return count;
+    }
+
+    /**
+     * Compresses a stream that can only be read once, without preCompress.
+     * Each block is read, counted, coded and written in turn, and no more
+     * than threadCount * 2 blocks are held at once, so an input of any
+     * length is compressed in the same memory. The output is flushed after
+     * every block. No index is written and the file ends with the 0 length
+     * after the last block.
+     * @param in is the stream being compressed
+     * @param out is bound to a file/stream to which bits are written
+     * @return the number of bits written
+     * @throws IOException if an error occurs while reading from the input or
+     * writing to the output.
+     */
+    public long compressStream(InputStream in, OutputStream out) throws IOException {
+        CompressEvent event = new CompressEvent();
+        event.begin();
+        BitOutputStream output = new BitOutputStream(out);
+        output.writeBits(BITS_PER_INT, MAGIC_NUMBER);
+        output.writeBits(BITS_PER_INT, STORE_BLOCKS);
+        output.writeBits(BITS_PER_INT, blockSize);
+        long count = BITS_PER_INT * 3;
+        long dataLength = 0;
+        symbols = 0;
+        codeBits = 0;
+        entropyBits = 0;
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        ArrayDeque<ForkJoinTask<BlockCode>> pending = new ArrayDeque<>();
+        try {
+            byte[] data = new byte[blockSize];
+            for (int read = in.readNBytes(data, 0, blockSize); read > 0;
+                    read = in.readNBytes(data, 0, blockSize)) {
+                byte[] block = data;
+                int length = read;
+                dataLength += length;
+                pending.add(pool.submit(() -> {
+                    BlockCode code = new BlockCode(block, length, maxCodeLength, storeRaw,
+                            listener);
+                    code.encoded = code.raw ? Arrays.copyOf(block, length)
+                            : encodeBlock(block, length, code.lengths, listener);
+                    return code;
+                }));
+                if (pending.size() == threadCount * 2) {
+                    BlockCode code = tally(pending.poll().join());
+                    count += writeBlock(code.encoded, code.raw, output);
+                    output.flush();
+                }
+                data = new byte[blockSize];
+            }
+            while (!pending.isEmpty()) {
+                BlockCode code = tally(pending.poll().join());
+                count += writeBlock(code.encoded, code.raw, output);
+                output.flush();
+            }
+        } finally {
+            pool.shutdown();
+            in.close();
+        }
+        output.writeBits(BITS_PER_INT, 0);
+        output.close();
+        count += BITS_PER_INT;
+        finished(event, dataLength, count);
+        return count;
+    }
+
+    /**
+     * Tells the listener, if there is one, and the flight recorder, if the
+     * CompressEvent is enabled, what a file compressed to.
+     * @param event the event begun when compressing started
+     * @param dataLength the number of bytes compressed
+     * @param count the number of bits written
+     */
+    private void finished(CompressEvent event, long dataLength, long count) {
+        long outputBytes = (count + BITS_PER_WORD - 1) / BITS_PER_WORD;
+        if (listener != null) {
+            listener.compressed(dataLength, outputBytes, symbols, codeBits,
+                    count - codeBits, entropyBits);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.headerFormat = STORE_BLOCKS;
+            event.inputSize = dataLength;
+            event.outputSize = outputBytes;
+            event.symbols = symbols;
+            event.commit();
+        }
+    }
+
+    /**
+     * Writes the index of the blocks and the end of the file.
+     * @param blockOffsets the bit offset of each block in the file
+     * @param dataOffsets the offset of each block in the uncompressed data
+     * @param dataLength the total length of the uncompressed data
+     * @param indexOffset the bit offset of the index in the file
+     * @param output the stream to write to
+     * @return the number of bits written
+     */
+    private static long writeIndex(long[] blockOffsets, long[] dataOffsets, long dataLength,
+            long indexOffset, BitOutputStream output) {
+        output.writeBits(BITS_PER_INT, blockOffsets.length);
+        for (int i = 0; i < blockOffsets.length; i++) {
+            writeLong(blockOffsets[i], output);
+            writeLong(dataOffsets[i], output);
+        }
+        writeLong(dataLength, output);
+        writeLong(indexOffset, output);
+        output.writeBits(BITS_PER_INT, STORE_BLOCKS);
+        return BITS_PER_INT + (long) blockOffsets.length * BITS_PER_LONG * 2
+                + BITS_PER_LONG * 2 + BITS_PER_INT;
+    }
+
+    /**
+     * Writes all 64 bits of a long.
+     * @param value the value to write
+     * @param output the stream to write to
+     */
+    private static void writeLong(long value, BitOutputStream output) {
+        output.writeBits(BITS_PER_INT, value >>> BITS_PER_INT);
+        output.writeBits(BITS_PER_INT, value);
+    }
+
+    /**
+     * Keeps the code lengths of a block for compress, or null for a raw block.
+     * @param code the code built for the block
+     * @return the number of bits the block takes up in the file
+     */
+    private long keepCode(BlockCode code) {
+        blockLengths.add(code.raw ? null : code.lengths);
+        tally(code);
+        return BITS_PER_INT + (code.bits + BITS_PER_WORD - 1) / BITS_PER_WORD * BITS_PER_WORD;
+    }
+
+    /**
+     * Adds the measurements of a block to those of the file.
+     * @param code the code built for the block
+     * @return code
+     */
+    private BlockCode tally(BlockCode code) {
+        symbols += code.symbols;
+        codeBits += code.codeBits;
+        entropyBits += code.entropyBits;
+        return code;
+    }
+
+    /**
+     * Encodes a block with its canonical code.
+     * @param data the bytes of the block
+     * @param length the number of bytes in the block
+     * @param lengths the code length of each value in the block
+     * @param listener told how long the header and the codes took, may be null
+     * @return the encoded block, padded to a whole byte
+     */
+    private static byte[] encodeBlock(byte[] data, int length, int[] lengths,
+            IHuffMetricsListener listener) {
+        long start = listener == null ? 0 : System.nanoTime();
+        long[] codes = CanonicalCode.assign(lengths);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(length / 2 + 64);
+        BitOutputStream out = new BitOutputStream(bytes);
+        CanonicalCode.writeLengths(lengths, out);
+        if (listener != null) {
+            long now = System.nanoTime();
+            listener.phaseFinished(IHuffMetricsListener.Phase.WRITE_HEADER, now - start);
+            start = now;
+        }
+        for (int i = 0; i < length; i++) {
+            int value = data[i] & 0xFF;
+            if (lengths[value] == 0) {
+                throw new IllegalStateException("input differs from the preprocessed input");
+            }
+            Compressor.printCode(codes[value], lengths[value], out);
+        }
+        Compressor.printCode(codes[PSEUDO_EOF], lengths[PSEUDO_EOF], out);
+        out.close();
+        if (listener != null) {
+            listener.phaseFinished(IHuffMetricsListener.Phase.ENCODE, System.nanoTime() - start);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes an encoded or raw block preceded by its length.
+     * @param block the encoded block, or the bytes of a raw block
+     * @param raw true if the block is stored unchanged
+     * @param output the stream to write to, at a byte boundary
+     * @return the number of bits written
+     * @throws IOException if writing fails
+     */
+    private static long writeBlock(byte[] block, boolean raw, BitOutputStream output)
+            throws IOException {
+        output.writeBits(BITS_PER_INT, raw ? block.length | RAW_BLOCK : block.length);
+        output.write(block, 0, block.length);
+        return BITS_PER_INT + (long) block.length * BITS_PER_WORD;
+    }
+
+    /*
+     * The canonical code of one block and the number of bits the encoded
+     * block takes up before padding, with the measurements of the block
+     * and, in compressStream, the encoded block itself. A raw block keeps
+     * its code but takes up the bits of its bytes.
+     */
+    private static class BlockCode {
+        private final int[] lengths;
+        private final boolean raw;
+        private final long bits;
+        private final long symbols;
+        private final long codeBits;
+        private final double entropyBits;
+        private byte[] encoded;
+
+        // Counts the bytes of a block and builds its code within maxLength
+        // bits, telling listener how long each took if it is not null. If
+        // storeRaw, a block the code does not shrink is raw.
+        private BlockCode(byte[] data, int length, int maxLength, boolean storeRaw,
+                IHuffMetricsListener listener) {
+            long start = listener == null ? 0 : System.nanoTime();
+            int[] freq = new int[ALPH_SIZE + 1];
+            for (int i = 0; i < length; i++) {
+                freq[data[i] & 0xFF]++;
+            }
+            freq[PSEUDO_EOF] = 1;
+            if (listener != null) {
+                long now = System.nanoTime();
+                listener.phaseFinished(IHuffMetricsListener.Phase.COUNT, now - start);
+                start = now;
+            }
+            lengths = Compressor.canonicalLengths(freq, maxLength);
+            long total = 0;
+            for (int value = 0; value < freq.length; value++) {
+                total += (long) freq[value] * lengths[value];
+            }
+            long coded = CanonicalCode.headerBits(lengths) + total;
+            long rawBits = (long) length * BITS_PER_WORD;
+            raw = storeRaw && (coded + BITS_PER_WORD - 1) / BITS_PER_WORD * BITS_PER_WORD >= rawBits;
+            codeBits = raw ? rawBits : total;
+            bits = raw ? rawBits : coded;
+            symbols = length + 1L;
+            if (listener != null) {
+                listener.phaseFinished(IHuffMetricsListener.Phase.BUILD_CODE, System.nanoTime() - start);
+                entropyBits = Compressor.entropyBits(Arrays.stream(freq).asLongStream().toArray());
+            } else {
+                entropyBits = 0;
+            }
+        }
+    }
+}
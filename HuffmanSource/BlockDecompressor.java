@@ -0,0 +1,424 @@
+package HuffmanSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Decompresses data in the STORE_BLOCKS format written by BlockCompressor.
+ * Every block carries its own canonical code header, so each one is
+ * decoded on its own. Read as a stream the blocks are decoded in order.
+ * Read from a file the index at the end of the file locates every block,
+ * so the blocks are decoded on several threads and each is written
+ * straight to its place in the output file. Raw blocks, marked by
+ * BlockCompressor.RAW_BLOCK in their length, are copied as they are.
+ */
+public class BlockDecompressor implements IHuffConstants {
+
+    // Number of bytes in the header, the index entry of a block and the footer.
+    private static final int HEADER_BYTES = 3 * Integer.BYTES;
+    private static final int ENTRY_BYTES = 2 * Long.BYTES;
+    private static final int FOOTER_BYTES = Long.BYTES + Integer.BYTES;
+
+    private IHuffMetricsListener listener;
+    private long blocksDecoded;
+
+    /**
+     * Set the listener told how long reading the header of each block and
+     * decoding it take, and what each whole file decompressed to, or null
+     * to measure nothing. Blocks decoded on several threads are reported
+     * from those threads.
+     * @param listener the listener to tell, may be null
+     */
+    public void setMetricsListener(IHuffMetricsListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Determines if a file is in the STORE_BLOCKS format and ends with
+     * the index of its blocks.
+     * @param in the compressed file
+     * @return true if the file can be decompressed with
+     * <code>decompress(FileChannel, FileChannel, int)</code>
+     * @throws IOException if reading from the file fails
+     */
+    public static boolean hasIndex(FileChannel in) throws IOException {
+        long size = in.size();
+        if (size < HEADER_BYTES + Integer.BYTES + Integer.BYTES + Long.BYTES + FOOTER_BYTES) {
+            return false;
+        }
+        ByteBuffer header = read(in, 0, 2 * Integer.BYTES);
+        ByteBuffer footer = read(in, size - FOOTER_BYTES, FOOTER_BYTES);
+        long indexBit = footer.getLong();
+        return header.getInt() == MAGIC_NUMBER && header.getInt() == STORE_BLOCKS
+                && footer.getInt() == STORE_BLOCKS && indexBit % BITS_PER_WORD == 0
+                && indexBit / BITS_PER_WORD >= HEADER_BYTES
+                && indexBit / BITS_PER_WORD <= size - FOOTER_BYTES;
+    }
+
+    /**
+     * Decompresses a STORE_BLOCKS file that has an index, decoding up to
+     * <tt>threadCount</tt> blocks at the same time. Each block is written at
+     * its offset in <tt>out</tt>, so the blocks may be written out of order.
+     * pre: hasIndex(in), threadCount > 0
+     * @param in the compressed file
+     * @param out the file to write the decompressed data to, not closed
+     * @param threadCount number of threads that decode blocks at the same time
+     * @return number of bits written to out, -1 for an invalid index or block
+     * header, or Decompressor.NO_PSEUDO_ERROR_CODE if a block is cut short
+     * @throws IOException if there's an error in reading or writing the files
+     */
+    public long decompress(FileChannel in, FileChannel out, int threadCount) throws IOException {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("thread count must be positive");
+        }
+        DecompressEvent event = new DecompressEvent();
+        event.begin();
+        long indexStart = indexStart(in);
+        if (indexStart == -1) {
+            return -1;
+        }
+        int blockCount = read(in, indexStart, Integer.BYTES).getInt();
+        // the entries and the total length must fit between the count and the
+        // end of the file, and in one buffer
+        long indexBytes = (long) blockCount * ENTRY_BYTES + Long.BYTES;
+        if (blockCount < 0 || indexBytes > in.size() - indexStart - Integer.BYTES
+                || indexBytes > Integer.MAX_VALUE) {
+            return -1;
+        }
+        ByteBuffer index = read(in, indexStart + Integer.BYTES, (int) indexBytes);
+        long[] blockOffsets = new long[blockCount + 1];
+        long[] dataOffsets = new long[blockCount + 1];
+        for (int i = 0; i < blockCount; i++) {
+            blockOffsets[i] = index.getLong() / BITS_PER_WORD;
+            dataOffsets[i] = index.getLong();
+        }
+        dataOffsets[blockCount] = index.getLong();
+        blockOffsets[blockCount] = indexStart - Integer.BYTES;
+        List<Callable<Long>> tasks = new ArrayList<>(blockCount);
+        for (int i = 0; i < blockCount; i++) {
+            long blockStart = blockOffsets[i];
+            long blockEnd = blockOffsets[i + 1];
+            long dataStart = dataOffsets[i];
+            long dataLength = dataOffsets[i + 1] - dataStart;
+            if (blockStart < HEADER_BYTES || blockEnd - blockStart <= Integer.BYTES
+                    || dataLength < 0 || dataLength > Integer.MAX_VALUE) {
+                return -1;
+            }
+            tasks.add(() -> {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) dataLength);
+                long bits = decodeBlock(in, blockStart, blockEnd, bytes, (int) dataLength);
+                if (bits >= 0) {
+                    ByteBuffer data = ByteBuffer.wrap(bytes.toByteArray());
+                    for (long position = dataStart; data.hasRemaining(); ) {
+                        position += out.write(data, position);
+                    }
+                }
+                return bits;
+            });
+        }
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        long totalBitsWritten = 0;
+        try {
+            for (Future<Long> result : pool.invokeAll(tasks)) {
+                long bits = result.get();
+                if (bits < 0) {
+                    return bits;
+                }
+                totalBitsWritten += bits;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while decoding blocks", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("error while decoding a block", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        if (listener != null) {
+            listener.uncompressed(in.size(), totalBitsWritten / BITS_PER_WORD);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.headerFormat = STORE_BLOCKS;
+            event.inputSize = in.size();
+            event.outputSize = totalBitsWritten / BITS_PER_WORD;
+            event.symbols = event.outputSize + blockCount;
+            event.commit();
+        }
+        return totalBitsWritten;
+    }
+
+    /**
+     * Decompresses part of a STORE_BLOCKS file that has an index. Only the
+     * blocks that hold some of the requested bytes are read and decoded, so
+     * the time taken depends on the length of the range and not on where
+     * it starts. A range that runs past the end of the data stops there.
+     * pre: hasIndex(in), offset >= 0, length >= 0
+     * @param in the compressed file
+     * @param out the stream to write the requested bytes to, not closed
+     * @param offset the position of the first requested byte in the uncompressed data
+     * @param length the number of bytes requested
+     * @return number of bits written to out, -1 for an invalid index or block
+     * header, or Decompressor.NO_PSEUDO_ERROR_CODE if a block is cut short
+     * @throws IOException if there's an error in reading the file or writing the stream
+     */
+    public long decompress(FileChannel in, OutputStream out, long offset, long length)
+            throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("offset and length must not be negative");
+        }
+        long indexStart = indexStart(in);
+        if (indexStart == -1) {
+            return -1;
+        }
+        int blockCount = read(in, indexStart, Integer.BYTES).getInt();
+        long dataEnd = read(in, entryPosition(indexStart, blockCount), Long.BYTES).getLong();
+        long end = offset + Math.min(length, Math.max(0, dataEnd - offset));
+        // the last block that starts at or before offset
+        int low = 0;
+        int high = blockCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (read(in, entryPosition(indexStart, mid), ENTRY_BYTES).getLong(Long.BYTES) <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        long totalBitsWritten = 0;
+        ByteBuffer entry = blockCount == 0 ? null : read(in, entryPosition(indexStart, low), ENTRY_BYTES);
+        for (int i = low; i < blockCount && offset < end; i++) {
+            long blockStart = entry.getLong() / BITS_PER_WORD;
+            long dataStart = entry.getLong();
+            long blockEnd = indexStart - Integer.BYTES;
+            long nextData = dataEnd;
+            if (i + 1 < blockCount) {
+                entry = read(in, entryPosition(indexStart, i + 1), ENTRY_BYTES);
+                blockEnd = entry.getLong(0) / BITS_PER_WORD;
+                nextData = entry.getLong(Long.BYTES);
+            }
+            long dataLength = nextData - dataStart;
+            if (blockStart < HEADER_BYTES || blockEnd - blockStart <= Integer.BYTES
+                    || dataStart > offset || dataLength < 0 || dataLength > Integer.MAX_VALUE) {
+                return -1;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) dataLength);
+            long bits = decodeBlock(in, blockStart, blockEnd, bytes, (int) dataLength);
+            if (bits < 0) {
+                return bits;
+            }
+            int from = (int) (offset - dataStart);
+            int count = (int) (Math.min(end, nextData) - offset);
+            out.write(bytes.toByteArray(), from, count);
+            totalBitsWritten += (long) count * BITS_PER_WORD;
+            offset += count;
+        }
+        return totalBitsWritten;
+    }
+
+    /**
+     * Finds the index of a file that hasIndex accepts.
+     * @param in the compressed file
+     * @return the position of the index in the file, or -1 if the number
+     * of blocks in the index does not fit its place in the file
+     * @throws IOException if reading from the file fails
+     */
+    private static long indexStart(FileChannel in) throws IOException {
+        if (!hasIndex(in)) {
+            return -1;
+        }
+        long size = in.size();
+        long indexStart = read(in, size - FOOTER_BYTES, Long.BYTES).getLong() / BITS_PER_WORD;
+        int blockCount = read(in, indexStart, Integer.BYTES).getInt();
+        if (blockCount < 0 || entryPosition(indexStart, blockCount) + Long.BYTES
+                != size - FOOTER_BYTES) {
+            return -1;
+        }
+        return indexStart;
+    }
+
+    /**
+     * Position of a block's entry in the index.
+     * @param indexStart the position of the index
+     * @param block the number of the block, or the number of blocks for
+     * the total uncompressed length that follows the entries
+     * @return the position of the entry in the file
+     */
+    private static long entryPosition(long indexStart, int block) {
+        return indexStart + Integer.BYTES + (long) block * ENTRY_BYTES;
+    }
+
+    /**
+     * Decodes the blocks that follow the STORE_BLOCKS header format value.
+     * Blocks are read and decoded one at a time and out is flushed after
+     * each one, so a stream of any length is decoded in the memory of one
+     * block and its data is passed on as soon as the block arrives.
+     * @param in the compressed data positioned just after STORE_BLOCKS
+     * @param out the stream to write the decompressed data to, not closed
+     * @return number of bits written to out, -1 for an invalid block header
+     * or a block longer than its block size allows, or
+     * Decompressor.NO_PSEUDO_ERROR_CODE if the data is cut short
+     * @throws IOException if there's an error in reading or writing streams
+     */
+    public long decompress(BitInputStream in, OutputStream out) throws IOException {
+        int blockSize = in.readBits(BITS_PER_INT);
+        if (blockSize <= 0) {
+            return -1;
+        }
+        long maxLength = maxBlockBytes(blockSize);
+        long totalBitsWritten = 0;
+        blocksDecoded = 0;
+        int length = in.readBits(BITS_PER_INT);
+        while (length != 0 && length != -1) {
+            boolean raw = (length & BlockCompressor.RAW_BLOCK) != 0;
+            length &= ~BlockCompressor.RAW_BLOCK;
+            if (length > (raw ? blockSize : maxLength)) {
+                return -1;
+            }
+            byte[] block = new byte[length];
+            if (in.readNBytes(block, 0, length) != length) {
+                return Decompressor.NO_PSEUDO_ERROR_CODE;
+            }
+            long bits;
+            if (raw) {
+                out.write(block);
+                bits = (long) length * BITS_PER_WORD;
+            } else {
+                bits = decodeBlock(block, out);
+            }
+            if (bits < 0) {
+                return bits;
+            }
+            totalBitsWritten += bits;
+            blocksDecoded++;
+            out.flush();
+            length = in.readBits(BITS_PER_INT);
+        }
+        return length == 0 ? totalBitsWritten : Decompressor.NO_PSEUDO_ERROR_CODE;
+    }
+
+    /**
+     * @return the number of blocks the last call to
+     * <code>decompress(BitInputStream, OutputStream)</code> decoded
+     */
+    long blocksDecoded() {
+        return blocksDecoded;
+    }
+
+    /**
+     * The most bytes an encoded block can take up. Every code, PSEUDO_EOF's
+     * included, fits in a long, and so does each value's entry in the
+     * canonical code header.
+     * @param blockSize the number of input bytes in a block
+     * @return the longest encoded block with at most blockSize bytes
+     */
+    private static long maxBlockBytes(int blockSize) {
+        return (blockSize + 1L) * Long.BYTES + (ALPH_SIZE + 2) * Long.BYTES;
+    }
+
+    /**
+     * Reads one block from the file and decodes it.
+     * @param in the compressed file
+     * @param blockStart the position of the block's length in the file
+     * @param blockEnd the position just past the end of the block
+     * @param out the stream to write the decoded bytes to
+     * @param dataLength the number of bytes the index says the block decodes to
+     * @return number of bits written to out, -1 for an invalid block or one
+     * that does not decode to dataLength bytes, or
+     * Decompressor.NO_PSEUDO_ERROR_CODE if the block has no PSEUDO_EOF
+     * @throws IOException if reading or writing fails
+     */
+    private long decodeBlock(FileChannel in, long blockStart, long blockEnd,
+            ByteArrayOutputStream out, int dataLength) throws IOException {
+        ByteBuffer block = read(in, blockStart, (int) (blockEnd - blockStart));
+        int length = block.getInt();
+        if ((length & BlockCompressor.RAW_BLOCK) != 0) {
+            if ((length & ~BlockCompressor.RAW_BLOCK) != block.remaining()
+                    || block.remaining() != dataLength) {
+                return -1;
+            }
+            out.write(block.array(), Integer.BYTES, dataLength);
+            return (long) dataLength * BITS_PER_WORD;
+        }
+        if (length != block.remaining()) {
+            return -1;
+        }
+        long bits = decodeBlock(block.array(), Integer.BYTES, block.remaining(), out);
+        if (bits >= 0 && out.size() != dataLength) {
+            return -1;
+        }
+        return bits;
+    }
+
+    /**
+     * Reads <tt>length</tt> bytes at <tt>position</tt> in a file.
+     * @param in the file to read from
+     * @param position the position of the first byte
+     * @param length the number of bytes
+     * @return a buffer with the bytes, ready to be read
+     * @throws IOException if reading fails or the file ends first
+     */
+    private static ByteBuffer read(FileChannel in, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = in.read(buffer, position + buffer.position());
+            if (read == -1) {
+                throw new IOException("unexpected end of compressed file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Decodes one block.
+     * @param block the encoded block, starting with its canonical code header
+     * @param out the stream to write the decoded bytes to
+     * @return number of bits written to out, -1 for an invalid code header,
+     * or Decompressor.NO_PSEUDO_ERROR_CODE if the block has no PSEUDO_EOF
+     * @throws IOException if writing fails
+     */
+    long decodeBlock(byte[] block, OutputStream out) throws IOException {
+        return decodeBlock(block, 0, block.length, out);
+    }
+
+    /**
+     * Decodes one block held in part of an array.
+     * @param block the array holding the encoded block
+     * @param offset the index of the first byte of the block
+     * @param length the number of bytes in the block
+     * @param out the stream to write the decoded bytes to
+     * @return number of bits written to out, -1 for an invalid code header,
+     * or Decompressor.NO_PSEUDO_ERROR_CODE if the block has no PSEUDO_EOF
+     * @throws IOException if writing fails
+     */
+    long decodeBlock(byte[] block, int offset, int length, OutputStream out)
+            throws IOException {
+        long start = listener == null ? 0 : System.nanoTime();
+        BitInputStream in = new BitInputStream(new ByteArrayInputStream(block, offset, length));
+        HuffDecodeTable table = CanonicalCode.readTable(in);
+        if (table == null) {
+            return -1;
+        }
+        if (listener == null) {
+            return table.decode(in, out);
+        }
+        long now = System.nanoTime();
+        listener.phaseFinished(IHuffMetricsListener.Phase.READ_HEADER, now - start);
+        long bits = table.decode(in, out);
+        listener.phaseFinished(IHuffMetricsListener.Phase.DECODE, System.nanoTime() - now);
+        return bits;
+    }
+}
@@ -0,0 +1,174 @@
+package HuffmanSource;
+
+import java.io.IOException;
+
+/**
+ * Canonical Huffman codes and the STORE_CUSTOM header that describes them.
+ * A canonical code is fully determined by the code length of each value:
+ * shorter codes come first and codes of the same length are assigned in
+ * increasing order of value. The header therefore only needs the lengths.
+ * <P>
+ * The header is a 5 bit field width <tt>w</tt>, then the values that
+ * occur stored by PresentValues, each followed by its length in <tt>w</tt>
+ * bits, then the length of PSEUDO_EOF in <tt>w</tt> bits. PresentValues
+ * picks whichever of its layouts is smaller, a bitmap of the ALPH_SIZE
+ * values or a list of the values that occur, so files with few distinct
+ * values get a short header.
+ */
+public class CanonicalCode implements IHuffConstants {
+
+    /**
+     * The longest code length the header can describe.
+     */
+    public static final int MAX_LENGTH = Long.SIZE - 1;
+
+    // Number of bits used to store the width of each length.
+    private static final int WIDTH_BITS = 5;
+
+    /**
+     * Assigns canonical codes to the given code lengths.
+     * pre: lengths != null
+     * @param lengths the code length of each value, 0 if the value does not occur
+     * @return the code of each value in the rightmost <tt>lengths[value]</tt> bits,
+     * or null if the lengths do not form a prefix code
+     */
+    public static long[] assign(int[] lengths) {
+        int maxLength = 0;
+        for (int length : lengths) {
+            if (length < 0 || length > MAX_LENGTH) {
+                return null;
+            }
+            maxLength = Math.max(maxLength, length);
+        }
+        int[] lengthCount = new int[maxLength + 1];
+        for (int length : lengths) {
+            lengthCount[length]++;
+        }
+        lengthCount[0] = 0;
+        long[] nextCode = new long[maxLength + 1];
+        long code = 0;
+        for (int len = 1; len <= maxLength; len++) {
+            code = (code + lengthCount[len - 1]) << 1;
+            nextCode[len] = code;
+        }
+        long[] codes = new long[lengths.length];
+        for (int value = 0; value < lengths.length; value++) {
+            int len = lengths[value];
+            if (len != 0) {
+                codes[value] = nextCode[len]++;
+                if (codes[value] >>> len != 0) {
+                    // more codes of this length than there is room for
+                    return null;
+                }
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * Number of bits the header for <tt>lengths</tt> takes up.
+     * @param lengths the code length of each value, 0 if the value does not occur
+     * @return the number of bits writeLengths writes for these lengths
+     */
+    public static int headerBits(int[] lengths) {
+        int width = lengthWidth(lengths);
+        int present = valuesPresent(lengths);
+        return WIDTH_BITS + PresentValues.bits(present) + present * width + width;
+    }
+
+    /**
+     * Writes the header for <tt>lengths</tt>.
+     * pre: lengths.length == ALPH_SIZE + 1
+     * @param lengths the code length of each value, 0 if the value does not occur
+     * @param out the stream to write the header to
+     * @return the number of bits written
+     */
+    public static int writeLengths(int[] lengths, BitOutputStream out) {
+        int width = lengthWidth(lengths);
+        out.writeBits(WIDTH_BITS, width);
+        PresentValues.write(value -> lengths[value] != 0, out,
+                value -> out.writeBits(width, lengths[value]));
+        out.writeBits(width, lengths[PSEUDO_EOF]);
+        return headerBits(lengths);
+    }
+
+    /**
+     * Reads a header written by writeLengths.
+     * @param in the stream positioned at the start of the header
+     * @return the code length of each value from 0 to PSEUDO_EOF,
+     * or null if the stream ends before the header does
+     * @throws IOException if reading from the stream fails
+     */
+    public static int[] readLengths(BitInputStream in) throws IOException {
+        int width = in.readBits(WIDTH_BITS);
+        if (width == -1) {
+            return null;
+        }
+        int[] lengths = new int[ALPH_SIZE + 1];
+        PresentValues.FieldReader length = value -> {
+            lengths[value] = in.readBits(width);
+            return lengths[value] != -1;
+        };
+        if (PresentValues.read(in, length) == null) {
+            return null;
+        }
+        lengths[PSEUDO_EOF] = in.readBits(width);
+        if (lengths[PSEUDO_EOF] == -1) {
+            return null;
+        }
+        return lengths;
+    }
+
+    /**
+     * Reads a header written by writeLengths and builds the decode table
+     * for the code it describes.
+     * @param in the stream positioned at the start of the header
+     * @return the decode table, or null if the header is cut short or does
+     * not describe a prefix code that includes PSEUDO_EOF
+     * @throws IOException if reading from the stream fails
+     */
+    public static HuffDecodeTable readTable(BitInputStream in) throws IOException {
+        return table(readLengths(in));
+    }
+
+    /**
+     * Builds the decode table for the code with the given lengths.
+     * @param lengths the code length of each value from 0 to PSEUDO_EOF, may be null
+     * @return the decode table, or null if lengths is null or does not
+     * describe a prefix code that includes PSEUDO_EOF
+     */
+    public static HuffDecodeTable table(int[] lengths) {
+        if (lengths == null || lengths[PSEUDO_EOF] == 0 || assign(lengths) == null) {
+            return null;
+        }
+        return new HuffDecodeTable(lengths);
+    }
+
+    /**
+     * Number of values before PSEUDO_EOF that have a code.
+     * @param lengths the code length of each value
+     * @return the number of values with a non-zero length
+     */
+    private static int valuesPresent(int[] lengths) {
+        int count = 0;
+        for (int value = 0; value < ALPH_SIZE; value++) {
+            if (lengths[value] != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Number of bits needed to store the longest of <tt>lengths</tt>.
+     * @param lengths the code length of each value
+     * @return the width of each stored length, at least 1
+     */
+    private static int lengthWidth(int[] lengths) {
+        int maxLength = 1;
+        for (int length : lengths) {
+            maxLength = Math.max(maxLength, length);
+        }
+        return Integer.SIZE - Integer.numberOfLeadingZeros(maxLength);
+    }
+}
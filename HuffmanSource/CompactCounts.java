@@ -0,0 +1,113 @@
+package HuffmanSource;
+
+import java.io.IOException;
+
+/**
+ * The STORE_COMPACT_COUNTS header, the same counts as STORE_COUNTS in
+ * fewer bits. Only the values that occur are stored, and each of their
+ * counts takes an Elias gamma code, so a count <tt>n</tt> takes
+ * 2 * floor(log2 n) + 1 bits instead of BITS_PER_INT.
+ * <P>
+ * The header starts with the values that occur, stored by PresentValues
+ * in the same layouts as the STORE_CUSTOM header. The counts of those
+ * values follow in increasing order of value, after all of the values
+ * rather than after each one. PSEUDO_EOF's count is always 1 and is not
+ * stored, so the decompressor rebuilds exactly the tree a STORE_COUNTS
+ * header gives.
+ */
+public class CompactCounts implements IHuffConstants {
+
+    /**
+     * The largest count the header holds, the same as STORE_COUNTS.
+     */
+    public static final long MAX_COUNT = Integer.MAX_VALUE;
+
+    /**
+     * Writes the header for the given counts.
+     * pre: freq.length >= ALPH_SIZE, 0 <= every count <= MAX_COUNT
+     * @param freq the count of each value
+     * @param out the stream to write to
+     * @return the number of bits written
+     */
+    public static int write(long[] freq, BitOutputStream out) {
+        int bits = PresentValues.write(value -> freq[value] != 0, out, null);
+        for (int value = 0; value < ALPH_SIZE; value++) {
+            if (freq[value] != 0) {
+                bits += writeGamma(freq[value], out);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Writes the Elias gamma code of a positive number: one 0 bit for each
+     * bit after the highest 1 bit, then the number itself.
+     * @param n the number, from 1 to MAX_COUNT
+     * @param out the stream to write to
+     * @return the number of bits written
+     */
+    private static int writeGamma(long n, BitOutputStream out) {
+        int extra = Long.SIZE - 1 - Long.numberOfLeadingZeros(n);
+        if (extra > 0) {
+            out.writeBits(extra, 0);
+        }
+        out.writeBits(extra + 1, n);
+        return 2 * extra + 1;
+    }
+
+    /**
+     * Reads a header written by write.
+     * @param in the stream positioned at the start of the header
+     * @return the count of each value from 0 to PSEUDO_EOF, PSEUDO_EOF's
+     * being 1, or null if the stream ends before the header does or holds
+     * a count over MAX_COUNT
+     * @throws IOException if reading from the stream fails
+     */
+    public static int[] read(BitInputStream in) throws IOException {
+        boolean[] present = PresentValues.read(in, null);
+        if (present == null) {
+            return null;
+        }
+        int[] freq = new int[ALPH_SIZE + 1];
+        for (int value = 0; value < ALPH_SIZE; value++) {
+            if (present[value]) {
+                freq[value] = readGamma(in);
+                if (freq[value] == -1) {
+                    return null;
+                }
+            }
+        }
+        freq[PSEUDO_EOF] = 1;
+        return freq;
+    }
+
+    /**
+     * Reads an Elias gamma code written by writeGamma.
+     * @param in the stream to read from
+     * @return the number, or -1 if the stream ends first or the number
+     * is over MAX_COUNT
+     * @throws IOException if reading from the stream fails
+     */
+    private static int readGamma(BitInputStream in) throws IOException {
+        int extra = 0;
+        int bit = in.readBits(1);
+        while (bit == 0) {
+            extra++;
+            if (extra >= Integer.SIZE - 1) {
+                return -1;
+            }
+            bit = in.readBits(1);
+        }
+        if (bit == -1) {
+            return -1;
+        }
+        if (extra == 0) {
+            return 1;
+        }
+        int rest = in.readBits(extra);
+        if (rest == -1) {
+            return -1;
+        }
+        return (1 << extra) | rest;
+    }
+}
@@ -0,0 +1,35 @@
+package HuffmanSource;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for writing one compressed file, by compress
+ * after preCompress or by compressStream. Not recorded when compress writes
+ * nothing because the file would be larger than its input.
+ */
+@Name("huffman.Compress")
+@Label("Huffman Compress")
+@Category("Huffman")
+@Description("Writing the header and codes of a compressed file")
+class CompressEvent extends jdk.jfr.Event {
+
+    @Label("Header Format")
+    @Description("The header format constant, such as STORE_CUSTOM")
+    int headerFormat;
+
+    @Label("Input Size")
+    @DataAmount
+    long inputSize;
+
+    @Label("Output Size")
+    @DataAmount
+    long outputSize;
+
+    @Label("Symbols")
+    @Description("Codes written, PSEUDO_EOF included once for each code")
+    long symbols;
+}
@@ -0,0 +1,355 @@
+package HuffmanSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Predicts how large a file will be once compressed without reading all of
+ * it. A fixed number of chunks spread evenly over the file, the first and
+ * last included, are mapped into memory and counted. The Huffman code for
+ * the counts, scaled up to the size of the file, gives the header, and the
+ * bits that code takes for each chunk give the bits per byte of the data
+ * and a confidence bound on it. A file no larger than the chunks together
+ * is counted whole, and then the estimate is exact.
+ * <P>
+ * Reading a few megabytes instead of the whole file lets a caller skip a
+ * file that will not compress, or pick a header format, before spending a
+ * full counting pass on it. Only the single code formats, STORE_COUNTS,
+ * STORE_COMPACT_COUNTS, STORE_TREE and STORE_CUSTOM, are estimated.
+ */
+public class CompressibilityEstimator implements IHuffConstants {
+
+    /**
+     * The number of bytes in a chunk unless set otherwise.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 14;
+
+    /**
+     * The number of chunks sampled unless set otherwise.
+     */
+    public static final int DEFAULT_CHUNK_COUNT = 64;
+
+    // The normal quantile for a two-sided 95% confidence bound.
+    private static final double CONFIDENCE_Z = 1.96;
+
+    private final int chunkSize;
+    private final int chunkCount;
+
+    /**
+     * Create an estimator that samples DEFAULT_CHUNK_COUNT chunks of
+     * DEFAULT_CHUNK_SIZE bytes.
+     */
+    public CompressibilityEstimator() {
+        this(DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_COUNT);
+    }
+
+    /**
+     * Create an estimator that samples <tt>chunkCount</tt> chunks of
+     * <tt>chunkSize</tt> bytes.
+     * pre: chunkSize > 0, chunkCount > 1
+     * @param chunkSize number of bytes in each chunk
+     * @param chunkCount number of chunks sampled
+     */
+    public CompressibilityEstimator(int chunkSize, int chunkCount) {
+        if (chunkSize <= 0 || chunkCount <= 1) {
+            throw new IllegalArgumentException("chunk size must be positive and "
+                    + "more than one chunk must be sampled");
+        }
+        this.chunkSize = chunkSize;
+        this.chunkCount = chunkCount;
+    }
+
+    /**
+     * Estimates the compressed size of a file, mapping the chunks it samples.
+     * @param file the file to estimate
+     * @param headerFormat STORE_COUNTS, STORE_COMPACT_COUNTS, STORE_TREE or STORE_CUSTOM
+     * @return the estimate
+     * @throws IOException if the file can't be read
+     */
+    public Estimate estimate(File file, int headerFormat) throws IOException {
+        checkFormat(headerFormat);
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = in.size();
+            long[][] counts = new long[chunks(size)][];
+            for (int chunk = 0; chunk < counts.length; chunk++) {
+                long start = chunkStart(chunk, counts.length, size);
+                int length = (int) Math.min(chunkLength(size), size - start);
+                counts[chunk] = count(in.map(FileChannel.MapMode.READ_ONLY, start, length));
+            }
+            return estimate(counts, size, headerFormat);
+        }
+    }
+
+    /**
+     * Estimates the compressed size of the bytes remaining in a buffer,
+     * such as a MappedByteBuffer of a whole file. The buffer's position is
+     * not changed.
+     * @param data the bytes to estimate
+     * @param headerFormat STORE_COUNTS, STORE_COMPACT_COUNTS, STORE_TREE or STORE_CUSTOM
+     * @return the estimate
+     */
+    public Estimate estimate(ByteBuffer data, int headerFormat) {
+        checkFormat(headerFormat);
+        long size = data.remaining();
+        long[][] counts = new long[chunks(size)][];
+        for (int chunk = 0; chunk < counts.length; chunk++) {
+            int start = data.position() + (int) chunkStart(chunk, counts.length, size);
+            int length = (int) Math.min(chunkLength(size), size - (start - data.position()));
+            ByteBuffer view = data.duplicate();
+            view.limit(start + length).position(start);
+            counts[chunk] = count(view);
+        }
+        return estimate(counts, size, headerFormat);
+    }
+
+    /**
+     * Makes sure the format is one the estimator handles.
+     * @param headerFormat the format asked for
+     */
+    private static void checkFormat(int headerFormat) {
+        if (headerFormat != STORE_COUNTS && headerFormat != STORE_COMPACT_COUNTS
+                && headerFormat != STORE_TREE && headerFormat != STORE_CUSTOM) {
+            throw new IllegalArgumentException("only STORE_COUNTS, STORE_COMPACT_COUNTS, "
+                    + "STORE_TREE and STORE_CUSTOM are estimated, not " + headerFormat);
+        }
+    }
+
+    /**
+     * @param size the number of bytes to estimate
+     * @return the number of chunks to count, 1 if the whole input is counted
+     */
+    private int chunks(long size) {
+        return size <= (long) chunkSize * chunkCount ? 1 : chunkCount;
+    }
+
+    /**
+     * @param size the number of bytes to estimate
+     * @return the number of bytes in a chunk, all of them if the whole
+     * input is counted
+     */
+    private long chunkLength(long size) {
+        return chunks(size) == 1 ? size : chunkSize;
+    }
+
+    /**
+     * The start of a chunk. The chunks are spread evenly from the start of
+     * the input to its end.
+     * @param chunk the number of the chunk
+     * @param chunks the number of chunks
+     * @param size the number of bytes in the input
+     * @return the offset of the chunk's first byte
+     */
+    private long chunkStart(int chunk, int chunks, long size) {
+        if (chunks == 1) {
+            return 0;
+        }
+        return (long) ((double) (size - chunkSize) * chunk / (chunks - 1));
+    }
+
+    /**
+     * Counts the bytes remaining in a buffer.
+     * @param chunk the bytes to count
+     * @return the count of each byte value
+     */
+    private static long[] count(ByteBuffer chunk) {
+        long[] counts = new long[ALPH_SIZE];
+        while (chunk.hasRemaining()) {
+            counts[chunk.get() & 0xFF]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Builds the estimate from the counts of each chunk. The code is built
+     * from the counts of all the chunks scaled to the size of the input.
+     * The bits per byte of the data is the ratio of the bits that code
+     * takes for the chunks to their length, and its variance over the
+     * chunks gives the confidence bound. The code fits the chunks better
+     * than the rest of the input, so the bound is widened by how many more
+     * bits each chunk takes with the code of the other chunks.
+     * @param counts the count of each byte value in each chunk
+     * @param size the number of bytes in the input
+     * @param headerFormat the format
+     * @return the estimate
+     */
+    private Estimate estimate(long[][] counts, long size, int headerFormat) {
+        long[] total = new long[ALPH_SIZE];
+        long sampled = 0;
+        for (long[] chunk : counts) {
+            for (int value = 0; value < ALPH_SIZE; value++) {
+                total[value] += chunk[value];
+                sampled += chunk[value];
+            }
+        }
+        if (sampled == size) {
+            HuffModel model = HuffModel.fromCounts(total, headerFormat);
+            return new Estimate(headerFormat, size, sampled, model.compressedBits(), 0);
+        }
+        // counts like those of the whole input, within what the header can hold
+        double scale = (double) size / sampled;
+        long limit = HuffModel.isCounts(headerFormat) ? Integer.MAX_VALUE : HuffTree.MAX_COUNT - 1;
+        long[] scaled = new long[ALPH_SIZE];
+        for (int value = 0; value < ALPH_SIZE; value++) {
+            if (total[value] != 0) {
+                scaled[value] = Math.min(limit, Math.max(1, Math.round(total[value] * scale)));
+            }
+        }
+        HuffModel model = HuffModel.fromCounts(scaled, headerFormat);
+        int[] lengths = model.codeLengths();
+        double[] bits = new double[counts.length];
+        double bitsSum = 0;
+        for (int chunk = 0; chunk < counts.length; chunk++) {
+            for (int value = 0; value < ALPH_SIZE; value++) {
+                bits[chunk] += (double) counts[chunk][value] * lengths[value];
+            }
+            bitsSum += bits[chunk];
+        }
+        double perByte = bitsSum / sampled;
+        double squares = 0;
+        for (int chunk = 0; chunk < counts.length; chunk++) {
+            long length = 0;
+            for (long count : counts[chunk]) {
+                length += count;
+            }
+            double residual = bits[chunk] - perByte * length;
+            squares += residual * residual;
+        }
+        double meanLength = (double) sampled / counts.length;
+        double error = Math.sqrt(squares / (counts.length - 1) / counts.length) / meanLength
+                * Math.sqrt(Math.max(0, 1 - (double) sampled / size));
+        double optimism = Math.max(0, heldOutBits(counts, total) - bitsSum) / sampled;
+        long dataBits = Math.round(perByte * size) + lengths[PSEUDO_EOF];
+        long margin = (long) Math.ceil((CONFIDENCE_Z * error + optimism) * size);
+        return new Estimate(headerFormat, size, sampled, model.headerBits() + dataBits, margin);
+    }
+
+    /**
+     * The bits each chunk takes with the Huffman code of the other chunks.
+     * A value only the chunk holds is counted once in the others.
+     * @param counts the count of each byte value in each chunk
+     * @param total the count of each byte value in all the chunks
+     * @return the number of bits
+     */
+    private static double heldOutBits(long[][] counts, long[] total) {
+        double bits = 0;
+        long[] rest = new long[ALPH_SIZE + 1];
+        int[] lengths = new int[ALPH_SIZE + 1];
+        long[] codes = new long[ALPH_SIZE + 1];
+        for (long[] chunk : counts) {
+            for (int value = 0; value < ALPH_SIZE; value++) {
+                rest[value] = Math.max(total[value] - chunk[value], Math.min(chunk[value], 1));
+            }
+            rest[PSEUDO_EOF] = 1;
+            Arrays.fill(lengths, 0);
+            HuffTree.fromCounts(rest).codes(codes, lengths);
+            for (int value = 0; value < ALPH_SIZE; value++) {
+                bits += (double) chunk[value] * lengths[value];
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * A prediction of the number of bits a compressed file will hold, with
+     * a 95% confidence bound.
+     */
+    public static final class Estimate {
+        private final int headerFormat;
+        private final long inputBytes;
+        private final long sampledBytes;
+        private final long compressedBits;
+        private final long marginBits;
+
+        private Estimate(int headerFormat, long inputBytes, long sampledBytes,
+                long compressedBits, long marginBits) {
+            this.headerFormat = headerFormat;
+            this.inputBytes = inputBytes;
+            this.sampledBytes = sampledBytes;
+            this.compressedBits = compressedBits;
+            this.marginBits = marginBits;
+        }
+
+        /**
+         * @return the header format estimated
+         */
+        public int headerFormat() {
+            return headerFormat;
+        }
+
+        /**
+         * @return the number of bytes in the input
+         */
+        public long inputBytes() {
+            return inputBytes;
+        }
+
+        /**
+         * @return the number of bytes read to make the estimate
+         */
+        public long sampledBytes() {
+            return sampledBytes;
+        }
+
+        /**
+         * @return true if the whole input was read, so the estimate is exact
+         */
+        public boolean exact() {
+            return sampledBytes == inputBytes;
+        }
+
+        /**
+         * The predicted number of bits in the compressed file, counted as
+         * preCompress counts them.
+         * @return the number of bits
+         */
+        public long compressedBits() {
+            return compressedBits;
+        }
+
+        /**
+         * @return half the width of the 95% confidence bound, in bits
+         */
+        public long marginBits() {
+            return marginBits;
+        }
+
+        /**
+         * @return the fewest bits the compressed file likely holds
+         */
+        public long lowestBits() {
+            return compressedBits - marginBits;
+        }
+
+        /**
+         * @return the most bits the compressed file likely holds
+         */
+        public long highestBits() {
+            return compressedBits + marginBits;
+        }
+
+        /**
+         * The predicted number of bits saved, as preCompress returns it.
+         * @return the number of bits saved, negative if the file grows
+         */
+        public long savedBits() {
+            return inputBytes * BITS_PER_WORD - compressedBits;
+        }
+
+        /**
+         * @return true if even the lowest likely size saves no bits, so
+         * the file is not worth compressing
+         */
+        public boolean hopeless() {
+            return lowestBits() >= inputBytes * BITS_PER_WORD;
+        }
+
+        public String toString() {
+            return String.format("%d bytes to %d +/- %d bits from %d sampled bytes",
+                    inputBytes, compressedBits, marginBits, sampledBytes);
+        }
+    }
+}
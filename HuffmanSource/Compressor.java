@@ -20,18 +20,132 @@ package HuffmanSource;
  *  Section number: 50760
  */
 
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 public class Compressor implements IHuffConstants {
-    private TreeNode treeRoot;
-    private int uncompressedLength;
-    private int totalNodes;
-    private int[] charFreq;
-    private HashMap<Integer, String> codeMap;
+    private HuffModel model;
+    private HuffModel registered;
+    private long uncompressedLength;
+    private long[] charFreq;
     private int headerType;
+    private int blockSize;
+    private int threadCount;
+    private int maxCodeLength;
+    private int retainLimit = DEFAULT_RETAIN_LIMIT;
+    private byte[] retained;
+    private int retainedLength;
+    private BlockCompressor blocks;
+    private boolean storeRaw;
+    private boolean raw;
+    private IHuffMetricsListener listener;
+    private long inputBits;
+    private long dataBits;
+    private long symbols;
+
+    /**
+     * The most input bytes preCompress keeps for compress unless set otherwise.
+     */
+    public static final int DEFAULT_RETAIN_LIMIT = 1 << 24;
+
+    // Number of bytes read from the input at a time.
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    // The largest array the virtual machine reliably allows.
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    // Number of bits before the data of a STORE_RAW file.
+    private static final int RAW_HEADER_BITS = 2 * BITS_PER_INT;
+
+    /**
+     * Create a Compressor that uses the default block size and one
+     * thread per processor for the STORE_BLOCKS format.
+     */
+    public Compressor() {
+        this(BlockCompressor.DEFAULT_BLOCK_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a Compressor with the given settings for the STORE_BLOCKS format.
+     * @param blockSize number of input bytes in each block
+     * @param threadCount number of threads that code blocks at the same time
+     */
+    public Compressor(int blockSize, int threadCount) {
+        this(blockSize, threadCount, CanonicalCode.MAX_LENGTH);
+    }
+
+    /**
+     * Create a Compressor with the given settings for the STORE_BLOCKS format
+     * and a limit on the length of codes. The limit applies to every format
+     * except STORE_COUNTS and STORE_COMPACT_COUNTS, whose headers only let
+     * the decompressor rebuild the Huffman tree itself. When the Huffman
+     * code has a longer code the shortest code within the limit is used
+     * instead.
+     * pre: 2 to the power maxCodeLength > ALPH_SIZE,
+     * maxCodeLength <= CanonicalCode.MAX_LENGTH
+     * @param blockSize number of input bytes in each block
+     * @param threadCount number of threads that code blocks at the same time
+     * @param maxCodeLength the longest code allowed
+     */
+    public Compressor(int blockSize, int threadCount, int maxCodeLength) {
+        this.blockSize = blockSize;
+        this.threadCount = threadCount;
+        this.maxCodeLength = maxCodeLength;
+    }
+
+    /**
+     * Set the most input bytes preCompress keeps in memory. When the whole
+     * input fits, compress encodes the kept bytes and does not read its
+     * input stream again. Longer inputs are read twice as before.
+     * pre: limit >= 0
+     * @param limit the most bytes to keep, 0 to never keep the input
+     */
+    public void setRetainLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("retain limit must not be negative");
+        }
+        retainLimit = limit;
+    }
+
+    /**
+     * Set the listener told how long each phase takes and what each file
+     * compressed to, or null to measure nothing.
+     * @param listener the listener to tell, may be null
+     */
+    public void setMetricsListener(IHuffMetricsListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Set whether input that does not compress is stored unchanged. When
+     * the coded file would be no smaller than the input itself the file is
+     * written in the STORE_RAW format instead: the magic number, STORE_RAW
+     * and the input, copied without coding. STORE_BLOCKS stores each block
+     * that does not compress unchanged instead.
+     * @param storeRaw true to store input that does not compress unchanged
+     */
+    public void setStoreRaw(boolean storeRaw) {
+        this.storeRaw = storeRaw;
+    }
+
+    /**
+     * Set the model from a ModelRegistry that the STORE_MODEL format
+     * compresses with. Only the model's ID is written as the header, so no
+     * code is built from the input.
+     * @param model a model with the STORE_MODEL format, or null for none
+     */
+    public void setModel(HuffModel model) {
+        if (model != null && model.headerFormat() != STORE_MODEL) {
+            throw new IllegalArgumentException("not a STORE_MODEL model");
+        }
+        this.registered = model;
+    }
     
     /**
      * Preprocess data so that compression is possible ---
@@ -48,31 +162,74 @@ public class Compressor implements IHuffConstants {
      * ALL bits that will be written including the
      * magic number, the header format number, the header to
      * reproduce the tree, AND the actual data.
-     * @throws IOException if an error occurs while reading from the input file.
+     * @throws IOException if an error occurs while reading from the input file,
+     * if a STORE_COUNTS or STORE_COMPACT_COUNTS header can't hold the count
+     * of a value, or if the
+     * input holds a value the STORE_MODEL model has no code for.
      */
-    public int preCompress(InputStream in, int headerInfo) throws IOException {
+    public long preCompress(InputStream in, int headerInfo) throws IOException {
         this.headerType = headerInfo;
-        this.charFreq = new int[ALPH_SIZE + 1];
-        int initialLen = countCharacters(in);
-        this.treeRoot = createTree();
-        this.codeMap = new HashMap<>();
-        this.totalNodes = createEncoding(treeRoot, "");
-        int dataLen = count();
-        int headerLen = 0;
-        if (headerType == STORE_COUNTS) {
-            headerLen = ALPH_SIZE * BITS_PER_INT;
-        } else if (headerType == STORE_TREE) {
-            headerLen = BITS_PER_INT + totalNodes + codeMap.size() * (BITS_PER_WORD + 1);
-        }
-        this.uncompressedLength = initialLen
-            - (dataLen + 2 * BITS_PER_INT + headerLen);       
+        this.raw = false;
+        if (headerType == STORE_MODEL && registered == null) {
+            throw new IllegalStateException("STORE_MODEL needs a model, see setModel");
+        }
+        if (headerType == STORE_BLOCKS) {
+            blocks = new BlockCompressor(blockSize, threadCount, maxCodeLength);
+            blocks.setRetainLimit(retainLimit);
+            blocks.setMetricsListener(listener);
+            blocks.setStoreRaw(storeRaw);
+            return blocks.preCompress(in);
+        }
+        PreprocessEvent event = new PreprocessEvent();
+        event.begin();
+        this.charFreq = new long[ALPH_SIZE + 1];
+        long start = listener == null ? 0 : System.nanoTime();
+        long initialLen = countCharacters(in);
+        start = phaseFinished(IHuffMetricsListener.Phase.COUNT, start);
+        if (headerType == STORE_MODEL) {
+            this.model = registered;
+            this.dataBits = model.dataBits(charFreq);
+            if (dataBits < 0) {
+                throw new IOException("the input holds a value model " + model.id()
+                        + " has no code for");
+            }
+        } else {
+            if (HuffModel.isCounts(headerType)) {
+                checkCountsFit();
+            }
+            this.model = HuffModel.fromCounts(Arrays.copyOf(charFreq, ALPH_SIZE), headerType,
+                    maxCodeLength);
+            this.dataBits = model.compressedBits() - model.headerBits();
+        }
+        phaseFinished(IHuffMetricsListener.Phase.BUILD_CODE, start);
+        this.inputBits = initialLen;
+        this.uncompressedLength = initialLen - model.headerBits() - dataBits;
+        long codedBits = (initialLen - uncompressedLength + BITS_PER_WORD - 1)
+                / BITS_PER_WORD * BITS_PER_WORD;
+        if (storeRaw && codedBits >= initialLen + RAW_HEADER_BITS) {
+            raw = true;
+            uncompressedLength = -RAW_HEADER_BITS;
+        }
+        this.symbols = 0;
+        for (long freq : charFreq) {
+            symbols += freq;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.headerFormat = raw ? STORE_RAW : headerType;
+            event.inputSize = initialLen / BITS_PER_WORD;
+            event.symbols = symbols;
+            event.bitsSaved = uncompressedLength;
+            event.commit();
+        }
         return uncompressedLength;
     }
 
     /**
 	 * Compresses input to output, where the same InputStream has
      * previously been pre-processed via <code>preprocessCompress</code>
-     * storing state used by this call.
+     * storing state used by this call. If preCompress kept the whole input,
+     * that copy is encoded and <tt>in</tt> is closed without being read.
      * <br> pre: <code>preprocessCompress</code> must be called before this method
      * @param in is the stream being compressed (NOT a BitInputStream)
      * @param out is bound to a file/stream to which bits are written
@@ -83,150 +240,220 @@ public class Compressor implements IHuffConstants {
      * @throws IOException if an error occurs while reading from the input file or
      * writing to the output file.
      */
-    public int compress(InputStream input, OutputStream out, boolean force) throws IOException {
+    public long compress(InputStream input, OutputStream out, boolean force) throws IOException {
+        if (headerType == STORE_BLOCKS) {
+            return blocks.compress(input, out, force);
+        }
         if (uncompressedLength < 0 && !force) {
             return uncompressedLength;
         }
-        BitOutputStream output = new BitOutputStream(out);
-        int count = 0;
-        output.writeBits(BITS_PER_INT, MAGIC_NUMBER);
-        output.writeBits(BITS_PER_INT, headerType);
-        count += BITS_PER_INT * 2;
-        if (headerType == STORE_COUNTS) {
-            for (int i = 0; i < charFreq.length - 1; i++) {
-                output.writeBits(BITS_PER_INT, charFreq[i]);
-                count += BITS_PER_INT;
-            }
-        } else if (headerType == STORE_TREE) {
-            int treeSize = totalNodes + codeMap.size() * (BITS_PER_WORD + 1);
-            output.writeBits(BITS_PER_INT, treeSize);
-            count += BITS_PER_INT;
-            count += writeTree(treeRoot, output);
-        }
-        count += writeData(input, output);
-        output.close();
+        CompressEvent event = new CompressEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        long count;
+        if (raw) {
+            count = writeRaw(input, out);
+            out.close();
+        } else {
+            BitOutputStream output = new BitOutputStream(out);
+            count = model.writeHeader(output);
+            start = phaseFinished(IHuffMetricsListener.Phase.WRITE_HEADER, start);
+            count += writeData(input, output);
+            output.close();
+        }
         input.close();
+        long outputBytes = (count + BITS_PER_WORD - 1) / BITS_PER_WORD;
+        if (listener != null) {
+            long codeBits = raw ? inputBits : dataBits;
+            phaseFinished(IHuffMetricsListener.Phase.ENCODE, start);
+            listener.compressed(inputBits / BITS_PER_WORD, outputBytes,
+                    symbols, codeBits, count - codeBits, entropyBits(charFreq));
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.headerFormat = raw ? STORE_RAW : headerType;
+            event.inputSize = inputBits / BITS_PER_WORD;
+            event.outputSize = outputBytes;
+            event.symbols = symbols;
+            event.commit();
+        }
         return count;
     }
 
     /**
-     * Recursively encodes the Huffman tree structure to the output stream.
-     * @param node the current node in the Huffman tree being processed
-     * @param output the BitOutputStream where the tree structure is being written
-     * @return total number of bits written to the output stream
+     * Tells the listener, if there is one, that a phase has finished.
+     * @param phase the phase that finished
+     * @param start the System.nanoTime at which the phase started
+     * @return the System.nanoTime now, the start of the next phase,
+     * or 0 if there is no listener
      */
-    private int writeTree(TreeNode node, BitOutputStream output) {
-        if (node.isLeaf()) {
-            output.writeBits(1, 1);
-            output.writeBits(BITS_PER_WORD + 1, node.getValue());
-            return BITS_PER_WORD + 2;
-        } else {
-            output.writeBits(1, 0);
-            int leftBits  = writeTree(node.getLeft(), output);
-            int rightBits = writeTree(node.getRight(), output);
-            return leftBits + rightBits + 1;
+    private long phaseFinished(IHuffMetricsListener.Phase phase, long start) {
+        if (listener == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        listener.phaseFinished(phase, now - start);
+        return now;
+    }
+
+    /**
+     * The fewest bits any code could write the given counts in: the entropy
+     * of the counts times the number of values counted.
+     * @param freq the count of each value
+     * @return the number of bits
+     */
+    static double entropyBits(long[] freq) {
+        long total = 0;
+        for (long f : freq) {
+            total += f;
+        }
+        double bits = 0;
+        for (long f : freq) {
+            if (f != 0) {
+                bits += f * (Math.log((double) total / f) / Math.log(2));
+            }
         }
+        return bits;
     }
 
     /**
      * Reads raw data from the input stream, encodes it using Huffman codes,
-     * and writes the resulting bits to the output stream.
+     * and writes the resulting bits to the output stream. Encodes the input
+     * kept by preCompress instead of reading the stream if there is one.
      * @param in the input stream to be compressed
      * @param output the BitOutputStream receiving the encoded bit data
      * @return total number of bits written to the compressed file
-     * @throws IOException if an error occurs during input or output operations
+     * @throws IOException if an error occurs during input or output operations,
+     * or if the input holds a value the preprocessed input did not
      */
-    private int writeData(InputStream in, BitOutputStream output) throws IOException {
-        BitInputStream input = new BitInputStream(in);
-        int count = 0;
-        for (int inbits = input.readBits(BITS_PER_WORD); inbits != -1; inbits = input.readBits(BITS_PER_WORD)) {
-            String code = codeMap.get(inbits);
-            printCode(code, output);
-            count += code.length();
-        }
-        String pseudoCode = codeMap.get(PSEUDO_EOF);
-        printCode(pseudoCode, output);
-        count += pseudoCode.length();
-        input.close();
+    private long writeData(InputStream in, BitOutputStream output) throws IOException {
+        long count = 0;
+        if (retained != null) {
+            count += HuffCodec.writeCodes(model, retained, retainedLength, output);
+            retained = null;
+        } else {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                count += HuffCodec.writeCodes(model, buffer, read, output);
+            }
+        }
+        count += HuffCodec.writeEnd(model, output);
+        in.close();
         return count;
     }
 
     /**
-     * Converts a binary string into bits and writes them to the output stream.
-     * @param code Huffman code string made of '0's and '1's
-     * @param output stream where the individual bits are written
+     * Writes a STORE_RAW file: the magic number, STORE_RAW and then the
+     * input unchanged. The input kept by preCompress is written in one
+     * piece, and from one file to another the bytes are transferred
+     * between the file channels without passing through this program.
+     * @param in the input stream to be stored
+     * @param out the stream to write the file to
+     * @return total number of bits written
+     * @throws IOException if an error occurs during input or output operations
      */
-    private void printCode(String code, BitOutputStream output) {
-        for (int i = 0, len = code.length(); i < len; ++i) {
-            output.writeBits(1, code.charAt(i) - '0');
+    private long writeRaw(InputStream in, OutputStream out) throws IOException {
+        out.write(ByteBuffer.allocate(RAW_HEADER_BITS / BITS_PER_WORD)
+                .putInt(MAGIC_NUMBER).putInt(STORE_RAW).array());
+        long bytes;
+        if (retained != null) {
+            out.write(retained, 0, retainedLength);
+            bytes = retainedLength;
+            retained = null;
+        } else if (in instanceof FileInputStream && out instanceof FileOutputStream) {
+            FileChannel source = ((FileInputStream) in).getChannel();
+            FileChannel target = ((FileOutputStream) out).getChannel();
+            long start = source.position();
+            long end = source.size();
+            for (long position = start; position < end; ) {
+                position += source.transferTo(position, end - position, target);
+            }
+            bytes = end - start;
+        } else {
+            bytes = in.transferTo(out);
         }
+        return RAW_HEADER_BITS + bytes * BITS_PER_WORD;
     }
+
     /**
-     * Determines the bit length of the compressed file content
-     * by summing each character’s frequency times its Huffman code length.
-     * @return total number of bits required for encoding all input characters
+     * Writes a Huffman code to the output stream, in one call to writeBits
+     * unless the code is longer than BitOutputStream.MAX_BITS_PER_WRITE.
+     * @param code the Huffman code in the rightmost <tt>length</tt> bits
+     * @param length the number of bits in the code
+     * @param output stream where the bits of the code are written
      */
-    private int count() {
-        int sum = 0;
-        for (int i = 0, n = charFreq.length; i < n; i++) {
-            int freq = charFreq[i];
-            if (freq == 0){
-                continue;
+    static void printCode(long code, int length, BitOutputStream output) {
+        if (length > BitOutputStream.MAX_BITS_PER_WRITE) {
+            output.writeBits(length - BITS_PER_INT, code >>> BITS_PER_INT);
+            output.writeBits(BITS_PER_INT, code);
+        } else {
+            output.writeBits(length, code);
+        }
+    }
+
+    /**
+     * Makes sure every count fits the BITS_PER_INT bits the STORE_COUNTS
+     * header gives it. The decompressor reads a count with the top bit set
+     * as a truncated header, so the largest count allowed is
+     * Integer.MAX_VALUE. STORE_COMPACT_COUNTS has the same limit so that
+     * both rebuild the same trees.
+     * @throws IOException if some value occurs more often than that
+     */
+    private void checkCountsFit() throws IOException {
+        for (int i = 0; i < ALPH_SIZE; i++) {
+            if (charFreq[i] > Integer.MAX_VALUE) {
+                throw new IOException("value " + i + " occurs " + charFreq[i]
+                        + " times, more than a " + (headerType == STORE_COUNTS
+                        ? "STORE_COUNTS" : "STORE_COMPACT_COUNTS") + " header can hold");
             }
-            sum += codeMap.get(i).length() * freq;
         }
-        return sum;
     }
 
     /**
-     * Fills codeMap with the value of each node and the path it took to get to that node
-     * @param treeNode represents the current node we are considering
-     * @param path represents the path it took to get to the current node
-     * @return the total number of nodes
+     * The model built by the last preCompress, which may be shared with
+     * HuffCodec to compress other inputs on any number of threads.
+     * pre: preCompress was called with a format other than STORE_BLOCKS
+     * @return the model
      */
-    private int createEncoding(TreeNode node, String path) {
-        if (node.isLeaf()) {
-            codeMap.put(node.getValue(), path);
-            return 1;
+    public HuffModel model() {
+        if (model == null || headerType == STORE_BLOCKS) {
+            throw new IllegalStateException("preCompress has not built a model");
         }
-        int subtotal = 1;
-        String leftPath = path + "0";
-        String rightPath= path + "1";
-        subtotal += createEncoding(node.getLeft(), leftPath);
-        subtotal += createEncoding(node.getRight(), rightPath);
-        return subtotal;
+        return model;
     }
 
     /**
-     * Creates a tree to store all of the character frequencies.
-     * @return TreeNode that stores all of the character frequencies
+     * Builds the Huffman tree for the given counts and returns the code
+     * length of each value for use as a canonical code. If the Huffman code
+     * has a code longer than <tt>maxLength</tt> the lengths of the best code
+     * within that limit are returned instead.
+     * @param freq the count of each value, PSEUDO_EOF included
+     * @param maxLength the longest code allowed
+     * @return the code length of each value, 0 for values that do not occur
      */
-    private TreeNode createTree() {
-        TreeNodePriorityQueue<TreeNode> pq = new TreeNodePriorityQueue<>();
-        int n = charFreq.length;
-        for (int i = 0; i < n; i++) {
-            int f = charFreq[i];
-            if (f == 0){
-                continue;
-            }
-            pq.enqueue(new TreeNode(i, f));
+    static int[] canonicalLengths(int[] freq, int maxLength) {
+        HuffTree tree = HuffTree.fromCounts(freq);
+        int[] lengths = new int[ALPH_SIZE + 1];
+        tree.codes(new long[ALPH_SIZE + 1], lengths);
+        if (tree.isLeaf()) {
+            lengths[tree.rootValue()] = 1;
+        } else if (longest(lengths) > maxLength) {
+            lengths = PackageMerge.lengths(freq, maxLength);
         }
-        return generateTree(pq);
+        return lengths;
     }
 
     /**
-     * Builds a Huffman tree from a priority queue of TreeNodes.
-     * Combines the two nodes with the lowest frequencies until only one tree remains.
-     * @param pq priority queue of TreeNodes, ordered by frequency
-     * @return the root of the final Huffman tree
+     * The longest of the given code lengths.
+     * @param lengths the code length of each value
+     * @return the largest length
      */
-    private TreeNode generateTree(TreeNodePriorityQueue<TreeNode> pq) {
-        while (pq.size() > 1) {
-            TreeNode first = pq.dequeue(); 
-            TreeNode second = pq.dequeue();  
-            pq.enqueue(new TreeNode(first, -1, second));
+    private static int longest(int[] lengths) {
+        int max = 0;
+        for (int length : lengths) {
+            max = Math.max(max, length);
         }
-        return pq.dequeue();
+        return max;
     }
 
     /**
@@ -236,15 +463,59 @@ public class Compressor implements IHuffConstants {
      * @return number of bits read from the input stream
      * @throws IOException if any I/O operation fails
      */
-    private int countCharacters(InputStream in) throws IOException {
-        BitInputStream bits = new BitInputStream(in);
-        int totalBits = 0;
-        for (int value = bits.readBits(BITS_PER_WORD); value != -1; value = bits.readBits(BITS_PER_WORD)) {
-            totalBits += BITS_PER_WORD;
-            charFreq[value]++;
+    private long countCharacters(InputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        retained = null;
+        retainedLength = 0;
+        if (retainLimit > 0) {
+            // streams over files and arrays know their length, one more byte finds the end
+            long expected = Math.max(BUFFER_SIZE, in.available() + 1L);
+            retained = new byte[(int) Math.min(Math.min(retainLimit + 1L, expected), MAX_ARRAY_SIZE)];
+        }
+        long totalBits = 0;
+        while (true) {
+            byte[] target = buffer;
+            int offset = 0;
+            if (retained != null && roomToRetain()) {
+                // read straight into the kept copy
+                target = retained;
+                offset = retainedLength;
+            }
+            int read = in.read(target, offset, Math.min(BUFFER_SIZE, target.length - offset));
+            if (read == -1) {
+                break;
+            }
+            totalBits += read * BITS_PER_WORD;
+            for (int i = offset; i < offset + read; i++) {
+                charFreq[target[i] & 0xFF]++;
+            }
+            if (target == retained) {
+                retainedLength += read;
+            }
+        }
+        if (retainedLength > retainLimit) {
+            retained = null;
         }
         charFreq[charFreq.length - 1]++;
-        bits.close();
+        in.close();
         return totalBits;
     }
+
+    /**
+     * Makes room for more bytes in the copy of the input kept for compress,
+     * or drops the copy once the input is longer than retainLimit.
+     * @return true if there is room in retained for the next bytes read
+     */
+    private boolean roomToRetain() {
+        if (retainedLength < retained.length) {
+            return true;
+        }
+        long grown = Math.min(Math.min(2L * retained.length, retainLimit + 1L), MAX_ARRAY_SIZE);
+        if (retainedLength > retainLimit || grown <= retained.length) {
+            retained = null;
+            return false;
+        }
+        retained = Arrays.copyOf(retained, (int) grown);
+        return true;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,191 @@
+package HuffmanSource;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of decoding tables keyed by the header they were built
+ * from, so files with the same STORE_COUNTS, STORE_TREE or STORE_CUSTOM
+ * header share one table instead of rebuilding the tree and table every
+ * time. The key is a 64-bit digest of the header bits, and the bits
+ * themselves are kept and compared too, so different headers never share
+ * a table. STORE_COMPACT_COUNTS headers are keyed as the STORE_COUNTS
+ * header with the same counts. When full, the least recently used table
+ * is dropped.
+ * <P>
+ * The cache is thread safe. Lookups hold a lock only to find or add an
+ * entry, and a missing table is built outside the lock, so two threads
+ * that miss on the same header at once may both build it.
+ */
+public class DecodeTableCache {
+
+    /**
+     * The number of tables kept unless set otherwise.
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    // FNV-1a constants for the 64-bit digest.
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int capacity;
+    private final Map<Key, HuffDecodeTable> tables;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Create a cache that keeps the DEFAULT_CAPACITY most recently used tables.
+     */
+    public DecodeTableCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a cache that keeps the <tt>capacity</tt> most recently used tables.
+     * pre: capacity > 0
+     * @param capacity the most tables kept
+     */
+    public DecodeTableCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        tables = new LinkedHashMap<Key, HuffDecodeTable>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Key, HuffDecodeTable> eldest) {
+                if (size() > DecodeTableCache.this.capacity) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Finds the table for a header, building and keeping it if it is not
+     * in the cache. A header the builder rejects is not kept.
+     * @param headerFormat the format of the header
+     * @param header the bits of the header, or another encoding of exactly
+     * what the table is built from, not changed afterwards
+     * @param builder builds the table from the header on a miss
+     * @return the table, or null if the builder returns null
+     * @throws IOException if the builder does
+     */
+    HuffDecodeTable get(int headerFormat, byte[] header, Builder builder) throws IOException {
+        Key key = new Key(headerFormat, header);
+        HuffDecodeTable table;
+        synchronized (tables) {
+            table = tables.get(key);
+        }
+        if (table != null) {
+            hits.increment();
+            return table;
+        }
+        misses.increment();
+        table = builder.build();
+        if (table != null) {
+            synchronized (tables) {
+                tables.put(key, table);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @return the number of lookups that found their table
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that had to build their table
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of tables dropped to make room
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of tables kept now
+     */
+    public int size() {
+        synchronized (tables) {
+            return tables.size();
+        }
+    }
+
+    /**
+     * @return the most tables kept
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Drops every table. The counters are kept.
+     */
+    public void clear() {
+        synchronized (tables) {
+            tables.clear();
+        }
+    }
+
+    public String toString() {
+        return "DecodeTableCache[size=" + size() + "/" + capacity + ", hits=" + hits()
+                + ", misses=" + misses() + ", evictions=" + evictions() + "]";
+    }
+
+    /**
+     * Builds a table on a miss.
+     */
+    interface Builder {
+        /**
+         * @return the table, or null if the header does not describe a code
+         * @throws IOException if reading the header fails
+         */
+        HuffDecodeTable build() throws IOException;
+    }
+
+    /*
+     * A header format and header bits, hashed by their 64-bit digest.
+     */
+    private static class Key {
+        private final int headerFormat;
+        private final byte[] header;
+        private final long digest;
+
+        private Key(int headerFormat, byte[] header) {
+            this.headerFormat = headerFormat;
+            this.header = header;
+            long hash = FNV_OFFSET ^ headerFormat;
+            for (byte b : header) {
+                hash = (hash ^ (b & 0xFF)) * FNV_PRIME;
+            }
+            digest = hash;
+        }
+
+        public int hashCode() {
+            return (int) (digest ^ (digest >>> 32));
+        }
+
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return digest == key.digest && headerFormat == key.headerFormat
+                    && Arrays.equals(header, key.header);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package HuffmanSource;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for uncompressing one whole file, as a stream
+ * or, for a STORE_BLOCKS file with an index, on several threads. Only
+ * files that decode without error are recorded.
+ */
+@Name("huffman.Decompress")
+@Label("Huffman Decompress")
+@Category("Huffman")
+@Description("Reading the header and decoding a compressed file")
+class DecompressEvent extends jdk.jfr.Event {
+
+    @Label("Header Format")
+    @Description("The header format constant, such as STORE_CUSTOM")
+    int headerFormat;
+
+    @Label("Input Size")
+    @DataAmount
+    long inputSize;
+
+    @Label("Output Size")
+    @DataAmount
+    long outputSize;
+
+    @Label("Symbols")
+    @Description("Codes decoded, PSEUDO_EOF included once for each code")
+    long symbols;
+}
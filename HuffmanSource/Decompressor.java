@@ -20,14 +20,51 @@ package HuffmanSource;
  *  Section number: 50760
  */
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 public class Decompressor implements IHuffConstants {
-    private TreeNode huffRoot;
+    private IHuffMetricsListener listener;
+    private DecodeTableCache tableCache;
+    private ModelRegistry models;
+    private int formatType;
+    private long codes;
     public final static int NO_PSEUDO_ERROR_CODE = -2;
 
+    /**
+     * Set the listener told how long reading the header and decoding take
+     * and what each file decompressed to, or null to measure nothing.
+     * @param listener the listener to tell, may be null
+     */
+    public void setMetricsListener(IHuffMetricsListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Set the cache that STORE_COUNTS, STORE_COMPACT_COUNTS, STORE_TREE and
+     * STORE_CUSTOM headers are looked up in, so a header seen before reuses its decoding table
+     * instead of rebuilding it, or null to always build the table.
+     * @param cache the cache to use, may be null
+     */
+    public void setTableCache(DecodeTableCache cache) {
+        this.tableCache = cache;
+    }
+
+    /**
+     * Set the registry that the IDs in STORE_MODEL headers are looked up in,
+     * or null to refuse STORE_MODEL files.
+     * @param models the registry to use, may be null
+     */
+    public void setModelRegistry(ModelRegistry models) {
+        this.models = models;
+    }
+
     /**
      * Reads a Huffman-compressed file, validates its format, rebuilds the tree,
      * and decompresses the encoded data into the output stream.
@@ -36,131 +73,298 @@ public class Decompressor implements IHuffConstants {
      * @return number of bits written to output, or -1 for invalid input
      * @throws IOException if there’s an error in reading or writing streams
      */
-    public int decompress(InputStream input, OutputStream output) throws IOException {
-        BitInputStream bitIn = new BitInputStream(input);
+    public long decompress(InputStream input, OutputStream output) throws IOException {
+        DecompressEvent event = new DecompressEvent();
+        event.begin();
+        CountingInputStream counted = null;
+        if (listener != null || event.isEnabled()) {
+            counted = new CountingInputStream(input);
+            input = counted;
+        }
+        long totalBitsWritten = decompress(new BitInputStream(input), output);
+        if (counted == null || totalBitsWritten < 0) {
+            return totalBitsWritten;
+        }
+        long outputBytes = totalBitsWritten / BITS_PER_WORD;
+        if (listener != null) {
+            listener.uncompressed(counted.count, outputBytes);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.headerFormat = formatType;
+            event.inputSize = counted.count;
+            event.outputSize = outputBytes;
+            event.symbols = outputBytes + codes;
+            event.commit();
+        }
+        return totalBitsWritten;
+    }
+
+    /**
+     * Determines if a file is in the STORE_RAW format.
+     * @param in the compressed file
+     * @return true if the file can be decompressed with decompressRaw
+     * @throws IOException if reading from the file fails
+     */
+    public static boolean isRaw(FileChannel in) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES);
+        while (header.hasRemaining()) {
+            if (in.read(header, header.position()) == -1) {
+                return false;
+            }
+        }
+        header.flip();
+        return header.getInt() == MAGIC_NUMBER && header.getInt() == STORE_RAW;
+    }
+
+    /**
+     * Copies the bytes from <tt>offset</tt> to <tt>offset + length</tt> of
+     * the data of a STORE_RAW file from one channel to another, which for
+     * two files does not pass them through this program. A range that runs
+     * past the end of the data stops there.
+     * pre: isRaw(in), offset >= 0, length >= 0
+     * @param in the compressed file
+     * @param out the channel to write the requested bytes to, not closed
+     * @param offset the position of the first requested byte in the data
+     * @param length the number of bytes requested
+     * @return number of bits written to out
+     * @throws IOException if there's an error in reading or writing the channels
+     */
+    public long decompressRaw(FileChannel in, WritableByteChannel out, long offset, long length)
+            throws IOException {
+        DecompressEvent event = new DecompressEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        long dataStart = 2 * Integer.BYTES;
+        long from = dataStart + Math.min(offset, in.size() - dataStart);
+        long end = from + Math.min(length, in.size() - from);
+        for (long position = from; position < end; ) {
+            position += in.transferTo(position, end - position, out);
+        }
+        long bytes = end - from;
+        if (listener != null) {
+            listener.phaseFinished(IHuffMetricsListener.Phase.DECODE, System.nanoTime() - start);
+            listener.uncompressed(bytes + dataStart, bytes);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.headerFormat = STORE_RAW;
+            event.inputSize = bytes + dataStart;
+            event.outputSize = bytes;
+            event.symbols = bytes;
+            event.commit();
+        }
+        return bytes * BITS_PER_WORD;
+    }
+
+    /**
+     * Reads the format and header of a compressed file and decodes it,
+     * keeping the format and the number of codes used for the event.
+     * @param bitIn the compressed data
+     * @param output the stream to write the decompressed data to
+     * @return number of bits written to output, or -1 for invalid input
+     * @throws IOException if there’s an error in reading or writing streams
+     */
+    private long decompress(BitInputStream bitIn, OutputStream output) throws IOException {
+        long start = listener == null ? 0 : System.nanoTime();
         int num = bitIn.readBits(BITS_PER_INT);
         if (num != MAGIC_NUMBER) {
             bitIn.close();
             return -1;
         }
-        int formatType = bitIn.readBits(BITS_PER_INT);
-        int totalBitsWritten = 0;
+        formatType = bitIn.readBits(BITS_PER_INT);
+        if (formatType == STORE_BLOCKS) {
+            BlockDecompressor blocks = new BlockDecompressor();
+            blocks.setMetricsListener(listener);
+            long totalBitsWritten = blocks.decompress(bitIn, output);
+            output.close();
+            codes = blocks.blocksDecoded();
+            return totalBitsWritten;
+        }
+        if (formatType == STORE_RAW) {
+            // stored unchanged, copied a buffer at a time
+            codes = 0;
+            long totalBitsWritten = bitIn.transferTo(output) * BITS_PER_WORD;
+            output.close();
+            if (listener != null) {
+                listener.phaseFinished(IHuffMetricsListener.Phase.DECODE, System.nanoTime() - start);
+            }
+            return totalBitsWritten;
+        }
+        codes = 1;
+        HuffDecodeTable table = null;
         if (formatType == STORE_COUNTS) {
-            buildTreeFromCounts(bitIn);
+            table = tableFromCounts(bitIn);
+        } else if (formatType == STORE_COMPACT_COUNTS) {
+            table = tableFor(CompactCounts.read(bitIn));
         } else if (formatType == STORE_TREE) {
-            buildTreeFromStructure(bitIn);
+            table = tableFromStructure(bitIn);
+        } else if (formatType == STORE_CUSTOM) {
+            table = tableFromLengths(bitIn);
+        } else if (formatType == STORE_MODEL) {
+            table = tableFromModel(bitIn);
+        }
+        if (table == null) {
+            bitIn.close();
+            return -1;
+        }
+        if (listener == null) {
+            long totalBitsWritten = table.decode(bitIn, output);
+            output.close();
+            return totalBitsWritten;
         }
-        totalBitsWritten = decodeCompressedData(bitIn, output, huffRoot);
+        long now = System.nanoTime();
+        listener.phaseFinished(IHuffMetricsListener.Phase.READ_HEADER, now - start);
+        long totalBitsWritten = table.decode(bitIn, output);
+        output.close();
+        listener.phaseFinished(IHuffMetricsListener.Phase.DECODE, System.nanoTime() - now);
         return totalBitsWritten;
     }
 
+    /*
+     * Counts the bytes read through it, for the listener.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
     /**
      * Reconstructs the encoding tree from a compressed file's tree-based header format.
      * Begins by reading the total number of bits used to represent the tree.
-     * @param in bit stream containing the serialized tree structure
+     * With a cache the bits of the tree are read first and the tree is
+     * only built if no table for them is cached.
+     * @param bitIn bit stream containing the serialized tree structure
+     * @return the decode table, or null if the stream does not hold a whole tree
      * @throws IOException if reading the stream fails
      */
-    private void buildTreeFromStructure(BitInputStream bitIn) throws IOException {
+    private HuffDecodeTable tableFromStructure(BitInputStream bitIn) throws IOException {
         int treeBitCount = bitIn.readBits(BITS_PER_INT);
-        huffRoot = rebuildTree(bitIn, new int[] {treeBitCount}, new TreeNode(-1, 0));
+        if (tableCache == null) {
+            return table(HuffTree.read(bitIn, treeBitCount));
+        }
+        byte[] header = HuffTree.readBits(bitIn, treeBitCount);
+        if (header == null) {
+            return null;
+        }
+        return tableCache.get(STORE_TREE, header, () -> table(HuffTree.read(
+                new BitInputStream(new ByteArrayInputStream(header)), treeBitCount)));
     }
 
     /**
-     * Builds the Huffman tree from a tree-encoded bit stream using recursion.
-     * Leaf nodes are marked by a 1 followed by a value, and internal nodes by a 0,
-     * followed by their left and right subtrees.
+     * Constructs a Huffman tree based on character frequencies provided in the input stream.
+     * The tree is the same one the compressor built from these frequencies.
      *
-     * @param bitIn the bit input stream with the encoded tree
-     * @param bitsRemaining a mutable integer array tracking remaining bits to read
-     * @param currentNode the node currently being initialized or expanded
-     * @return the constructed node corresponding to this portion of the tree
-     * @throws IOException if reading from the bit stream fails
+     * @param bitIn bit input stream with character count data
+     * @return the decode table, or null if the counts are cut short
+     * @throws IOException if reading from the input stream fails
      */
-    private TreeNode rebuildTree(BitInputStream bitIn, int[] bitsRemaining, TreeNode currentNode) throws IOException {
-        if (bitsRemaining[0] == 0) {
+    private HuffDecodeTable tableFromCounts(BitInputStream bitIn) throws IOException {
+        int[] charFreq = new int[ALPH_SIZE + 1];
+        for (int i = 0; i < ALPH_SIZE; i++) {
+            charFreq[i] = bitIn.readBits(BITS_PER_INT);
+            if (charFreq[i] < 0) {
+                return null;
+            }
+        }
+        charFreq[PSEUDO_EOF] = 1;
+        return tableFor(charFreq);
+    }
+
+    /**
+     * The decode table for the tree built from counts. A STORE_COUNTS and a
+     * STORE_COMPACT_COUNTS header with the same counts share a cached table.
+     * @param charFreq the count of each value, PSEUDO_EOF's included, may be null
+     * @return the decode table, or null if charFreq is null
+     * @throws IOException if building the table fails
+     */
+    private HuffDecodeTable tableFor(int[] charFreq) throws IOException {
+        if (charFreq == null) {
             return null;
         }
-        int nextBit = bitIn.readBits(1);
-        bitsRemaining[0]--;
-        if (nextBit == 1) {
-            currentNode = new TreeNode(bitIn.readBits(BITS_PER_WORD + 1), 0);
-        } else {
-            currentNode.setLeft(rebuildTree(bitIn, bitsRemaining, new TreeNode(-1, 0)));
-            currentNode.setRight(rebuildTree(bitIn, bitsRemaining, new TreeNode(-1, 0)));
+        if (tableCache == null) {
+            return table(HuffTree.fromCounts(charFreq));
         }
-        return currentNode;
+        ByteBuffer header = ByteBuffer.allocate(ALPH_SIZE * Integer.BYTES);
+        for (int i = 0; i < ALPH_SIZE; i++) {
+            header.putInt(charFreq[i]);
+        }
+        return tableCache.get(STORE_COUNTS, header.array(),
+                () -> table(HuffTree.fromCounts(charFreq)));
     }
 
     /**
-     * Constructs a Huffman tree based on character frequencies provided in the input stream.
-     * The frequencies are stored in a priority queue and used to generate the encoding tree.
-     *
-     * @param bitIn bit input stream with character count data
+     * Reads a STORE_CUSTOM header of code lengths.
+     * @param bitIn the stream positioned at the start of the header
+     * @return the decode table, or null if the header is cut short or does
+     * not describe a prefix code that includes PSEUDO_EOF
      * @throws IOException if reading from the input stream fails
      */
-    private void buildTreeFromCounts(BitInputStream bitIn) throws IOException {
-        TreeNodePriorityQueue<TreeNode> nodeQueue = new TreeNodePriorityQueue<>();
-        for (int i = 0; i < ALPH_SIZE; i++) {
-            int charFreq = bitIn.readBits(BITS_PER_INT);
-            if (charFreq != 0) {
-                nodeQueue.enqueue(new TreeNode(i, charFreq));
+    private HuffDecodeTable tableFromLengths(BitInputStream bitIn) throws IOException {
+        int[] lengths = CanonicalCode.readLengths(bitIn);
+        if (tableCache == null || lengths == null) {
+            return CanonicalCode.table(lengths);
+        }
+        byte[] header = new byte[lengths.length];
+        for (int i = 0; i < lengths.length; i++) {
+            if (lengths[i] > CanonicalCode.MAX_LENGTH) {
+                return null;
             }
+            header[i] = (byte) lengths[i];
         }
-        nodeQueue.enqueue(new TreeNode(PSEUDO_EOF, 1));
-        huffRoot = constructTree(nodeQueue);
+        return tableCache.get(STORE_CUSTOM, header, () -> CanonicalCode.table(lengths));
     }
 
     /**
-     * Uses the Huffman tree to decode a stream of compressed bits into raw characters,
-     * writing the result to the output stream. Ends decoding when PSEUDO_EOF is reached.
-     *
-     * @param bitIn the bit input stream of the compressed data
-     * @param bitOut the output stream to write decoded characters
-     * @param currentNode the node used for decoding traversal (typically the root)
-     * @return total number of bits written to output, or an error code if PSEUDO_EOF is missing
-     * @throws IOException if reading from input or writing to output fails
+     * Reads a STORE_MODEL header, the ID of a model in the registry.
+     * @param bitIn the stream positioned at the start of the header
+     * @return the model's decode table, or null if the header is cut short
+     * @throws IOException if reading from the input stream fails, or if
+     * there is no registry or it has no model with the ID
      */
-    private int decodeCompressedData(BitInputStream in, OutputStream out, TreeNode currentNode) 
-            throws IOException {
-        BitOutputStream bitOut = new BitOutputStream(out);
-        int nextBit = in.readBits(1);
-        int totalBitsWritten = 0;
-
-        while (nextBit != -1) {
-            if (currentNode.isLeaf()) {
-                bitOut.writeBits(BITS_PER_WORD, currentNode.getValue());
-                currentNode = huffRoot;
-                totalBitsWritten += BITS_PER_WORD;
-            }
-            if (nextBit == 0) {
-                currentNode = currentNode.getLeft();
-            } else {
-                currentNode = currentNode.getRight();
-            }
-            if (currentNode.getValue() == PSEUDO_EOF) {
-                bitOut.close();
-                return totalBitsWritten;
-            }
-            nextBit = in.readBits(1);
+    private HuffDecodeTable tableFromModel(BitInputStream bitIn) throws IOException {
+        int id = bitIn.readBits(BITS_PER_INT);
+        if (id < 0) {
+            return null;
         }
-        bitOut.close();
-        return NO_PSEUDO_ERROR_CODE;
+        HuffModel model = models == null ? null : models.get(id);
+        if (model == null) {
+            throw new IOException("no model " + id + " in the model registry");
+        }
+        return model.decodeTable();
     }
 
     /**
-     * Generates the Huffman tree used for encoding by merging nodes from the priority queue.
-     * Continues merging the two smallest nodes until the tree is complete.
-     *
-     * @param nodeQueue the queue containing TreeNodes ordered by frequency
-     * @return the root node of the resulting Huffman tree
+     * The decode table for a tree.
+     * @param tree the tree, may be null
+     * @return the table, or null if tree is null
      */
-    private TreeNode constructTree(TreeNodePriorityQueue<TreeNode> nodeQueue) {
-        while (nodeQueue.size() > 1) {
-            TreeNode left = nodeQueue.dequeue();
-            TreeNode right = nodeQueue.dequeue();
-            TreeNode merged = new TreeNode(left, -1, right);
-            nodeQueue.enqueue(merged);
-        }
-        return nodeQueue.dequeue();
+    private static HuffDecodeTable table(HuffTree tree) {
+        return tree == null ? null : new HuffDecodeTable(tree);
     }
 }
\ No newline at end of file
@@ -3,7 +3,6 @@ package HuffmanSource;
 import java.awt.BorderLayout;
 import java.awt.Font;
 import java.awt.event.ActionEvent;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -11,8 +10,6 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 
 import javax.swing.AbstractAction;
 import javax.swing.BorderFactory;
@@ -144,7 +141,7 @@ public class GUIHuffViewer extends JFrame implements IHuffViewer {
                 public void run() {
                     try {
                         myFirstReadingDone = false;
-                        int saved = myModel.preprocessCompress(pmis, myHeaderFormat);
+                        long saved = myModel.preprocessCompressLong(pmis, myHeaderFormat);
                         showMessage("saved: "+ saved +" bits");
                         myFirstReadingDone = true;
                     } catch (IOException e) {
@@ -203,6 +200,19 @@ public class GUIHuffViewer extends JFrame implements IHuffViewer {
         group.add(countHeaderButton);
         headerMenu.add(countHeaderButton);
 
+        // create the radio button for the compact count format
+        JRadioButtonMenuItem compactHeaderButton 
+        = new JRadioButtonMenuItem();
+        compactHeaderButton.setSelected(false);
+        compactHeaderButton.setAction(new AbstractAction("Use Compact Count Header") {
+            public void actionPerformed(ActionEvent ev) {
+                myHeaderFormat = IHuffConstants.STORE_COMPACT_COUNTS;
+            }
+        });
+
+        group.add(compactHeaderButton);
+        headerMenu.add(compactHeaderButton);
+
         // create the radio button for standard tree format
         JRadioButtonMenuItem treeHeaderButton 
         = new JRadioButtonMenuItem();
@@ -215,6 +225,32 @@ public class GUIHuffViewer extends JFrame implements IHuffViewer {
 
         group.add(treeHeaderButton);
         headerMenu.add(treeHeaderButton);
+
+        // create the radio button for the canonical code format
+        JRadioButtonMenuItem customHeaderButton 
+        = new JRadioButtonMenuItem();
+        customHeaderButton.setSelected(false);
+        customHeaderButton.setAction(new AbstractAction("Use Canonical Code Header(custom)") {
+            public void actionPerformed(ActionEvent ev) {
+                myHeaderFormat = IHuffConstants.STORE_CUSTOM;
+            }
+        });
+
+        group.add(customHeaderButton);
+        headerMenu.add(customHeaderButton);
+
+        // create the radio button for the block format
+        JRadioButtonMenuItem blockHeaderButton 
+        = new JRadioButtonMenuItem();
+        blockHeaderButton.setSelected(false);
+        blockHeaderButton.setAction(new AbstractAction("Use Block Format(parallel)") {
+            public void actionPerformed(ActionEvent ev) {
+                myHeaderFormat = IHuffConstants.STORE_BLOCKS;
+            }
+        });
+
+        group.add(blockHeaderButton);
+        headerMenu.add(blockHeaderButton);
         return headerMenu;
     }
 
@@ -457,18 +493,9 @@ public class GUIHuffViewer extends JFrame implements IHuffViewer {
                 JOptionPane.INFORMATION_MESSAGE);
     }
 
-    private ByteArrayInputStream getFastByteReader(File f){
-        ByteBuffer buffer = null;
+    private InputStream getFastByteReader(File f){
         try {
-            FileChannel channel = new FileInputStream(f).getChannel();
-            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
-            byte[] barray = new byte[buffer.limit()];
-
-            if (barray.length != channel.size()){               
-                showError(String.format("Reading %s error: lengths differ %d %ld\n",f.getName(),barray.length,channel.size()));
-            }
-            buffer.get(barray);
-            return new ByteArrayInputStream(barray);
+            return new MappedInputStream(f);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -0,0 +1,124 @@
+package HuffmanSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compresses and uncompresses with a HuffModel. Every method keeps its
+ * state in local variables and only reads the model, so any number of
+ * threads may use the same model at once. Unlike Compressor there is no
+ * preprocessing step: the model is built once, for example from a sample
+ * with HuffModel.train, and then used for every input.
+ */
+public final class HuffCodec implements IHuffConstants {
+
+    // Number of bytes read from the input at a time.
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    private HuffCodec() {
+    }
+
+    /**
+     * Compresses a stream with a model. The compressed file has the
+     * model's header and can be uncompressed by Decompressor as well as
+     * by <code>decompress</code>. <tt>in</tt> is read to its end but neither
+     * stream is closed. out is flushed.
+     * @param model the model to compress with
+     * @param in the data to compress
+     * @param out the stream to write the compressed file to
+     * @return the number of bits written, before the last byte is padded
+     * @throws IOException if reading or writing fails, or if the input holds
+     * a value the model has no code for
+     */
+    public static long compress(HuffModel model, InputStream in, OutputStream out)
+            throws IOException {
+        BitOutputStream output = new BitOutputStream(out);
+        long count = model.writeHeader(output);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+            count += writeCodes(model, buffer, read, output);
+        }
+        count += writeEnd(model, output);
+        output.flush();
+        return count;
+    }
+
+    /**
+     * Compresses the first <tt>length</tt> bytes of an array with a model.
+     * @param model the model to compress with
+     * @param data the data to compress
+     * @param length the number of bytes to compress
+     * @param out the stream to write the compressed file to, flushed but not closed
+     * @return the number of bits written, before the last byte is padded
+     * @throws IOException if writing fails, or if the data holds a value the
+     * model has no code for
+     */
+    public static long compress(HuffModel model, byte[] data, int length, OutputStream out)
+            throws IOException {
+        BitOutputStream output = new BitOutputStream(out);
+        long count = model.writeHeader(output);
+        count += writeCodes(model, data, length, output);
+        count += writeEnd(model, output);
+        output.flush();
+        return count;
+    }
+
+    /**
+     * Uncompresses a file compressed with a model. The header is checked
+     * against the model's instead of being used to rebuild the code, so the
+     * decoding table is never built again. Neither stream is closed.
+     * @param model the model the file was compressed with
+     * @param in the compressed file, at its start
+     * @param out the stream to write the uncompressed data to, flushed
+     * @return the number of bits written to out, -1 if the file does not
+     * start with the model's header, or Decompressor.NO_PSEUDO_ERROR_CODE if
+     * the data ends without a PSEUDO_EOF
+     * @throws IOException if reading or writing fails
+     */
+    public static long decompress(HuffModel model, InputStream in, OutputStream out)
+            throws IOException {
+        BitInputStream input = new BitInputStream(in);
+        if (!model.readHeader(input)) {
+            return -1;
+        }
+        long bits = model.decodeTable().decode(input, out);
+        out.flush();
+        return bits;
+    }
+
+    /**
+     * Writes the codes of the first <tt>length</tt> bytes of <tt>data</tt>.
+     * @param model the model to compress with
+     * @param data the bytes to encode
+     * @param length the number of bytes to encode
+     * @param output the stream receiving the codes
+     * @return the number of bits written
+     * @throws IOException if a byte has no code in the model
+     */
+    static long writeCodes(HuffModel model, byte[] data, int length, BitOutputStream output)
+            throws IOException {
+        long count = 0;
+        for (int i = 0; i < length; i++) {
+            int value = data[i] & 0xFF;
+            int codeLength = model.codeLength(value);
+            if (codeLength == 0) {
+                throw new IOException("value " + value + " has no code in the model");
+            }
+            Compressor.printCode(model.code(value), codeLength, output);
+            count += codeLength;
+        }
+        return count;
+    }
+
+    /**
+     * Writes the code of PSEUDO_EOF.
+     * @param model the model to compress with
+     * @param output the stream receiving the code
+     * @return the number of bits written
+     */
+    static long writeEnd(HuffModel model, BitOutputStream output) {
+        Compressor.printCode(model.code(PSEUDO_EOF), model.codeLength(PSEUDO_EOF), output);
+        return model.codeLength(PSEUDO_EOF);
+    }
+}
@@ -0,0 +1,254 @@
+package HuffmanSource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Lookup tables for decoding a Huffman code several bits at a time.
+ * The primary table is indexed by the next <tt>rootBits</tt> bits of the
+ * compressed stream and resolves any code of that length or shorter with a
+ * single lookup. Codes longer than the primary width continue in secondary
+ * tables indexed by the bits that follow.
+ * <P>
+ * Each table entry is an int. A leaf entry holds the decoded value in the
+ * upper bits and the number of bits it consumes from the current table in
+ * the low 8 bits. A link entry has the sign bit set, the width of the
+ * secondary table in bits 24-30 and its offset in the low 24 bits. An
+ * entry of 0 marks a bit pattern that is not a valid code.
+ */
+public class HuffDecodeTable implements IHuffConstants {
+
+    /**
+     * The largest width of the primary table.
+     */
+    public static final int ROOT_BITS = 10;
+
+    // The largest width of a secondary table.
+    private static final int SUB_BITS = 8;
+
+    private static final int LINK = 0x80000000;
+    private static final int LENGTH_MASK = 0xFF;
+    private static final int OFFSET_MASK = 0xFFFFFF;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private int[] table;
+    private int size;
+    private int rootBits;
+
+    /*
+     * The value of the single leaf when the tree is just a root. Such a tree
+     * has a zero-length code and nothing to look up. -1 otherwise.
+     */
+    private int onlyValue;
+
+    /**
+     * Build the decode tables for a Huffman tree.
+     * pre: tree != null
+     * @param tree the Huffman tree used to encode the data
+     */
+    public HuffDecodeTable(HuffTree tree) {
+        if (tree == null) {
+            throw new IllegalArgumentException("tree must not be null");
+        }
+        onlyValue = -1;
+        if (tree.isLeaf()) {
+            onlyValue = tree.rootValue();
+            table = new int[0];
+            return;
+        }
+        long[] codes = new long[ALPH_SIZE + 1];
+        int[] lengths = new int[ALPH_SIZE + 1];
+        int[] values = tree.codes(codes, lengths);
+        int maxLength = 0;
+        for (int length : lengths) {
+            maxLength = Math.max(maxLength, length);
+        }
+        rootBits = Math.min(ROOT_BITS, maxLength);
+        table = new int[1 << rootBits];
+        size = table.length;
+        place(values, 0, values.length, lengths, codes, 0, 0, rootBits);
+    }
+
+    /**
+     * Build the decode tables for the canonical code with the given code
+     * lengths. No tree is needed, see CanonicalCode.
+     * pre: lengths != null
+     * @param lengths the code length of each value, 0 if the value does not occur
+     * @throws IllegalArgumentException if the lengths do not form a prefix code
+     */
+    public HuffDecodeTable(int[] lengths) {
+        long[] codes = CanonicalCode.assign(lengths);
+        if (codes == null) {
+            throw new IllegalArgumentException("code lengths do not form a prefix code");
+        }
+        // values in canonical order, which is also the order of their codes
+        int maxLength = 0;
+        for (int length : lengths) {
+            maxLength = Math.max(maxLength, length);
+        }
+        int[] lengthStart = new int[maxLength + 2];
+        for (int length : lengths) {
+            if (length != 0) {
+                lengthStart[length + 1]++;
+            }
+        }
+        for (int len = 1; len < lengthStart.length; len++) {
+            lengthStart[len] += lengthStart[len - 1];
+        }
+        int count = lengthStart[maxLength + 1];
+        if (count == 0) {
+            throw new IllegalArgumentException("no values have a code");
+        }
+        int[] values = new int[count];
+        for (int value = 0; value < lengths.length; value++) {
+            if (lengths[value] != 0) {
+                values[lengthStart[lengths[value]]++] = value;
+            }
+        }
+        onlyValue = -1;
+        rootBits = Math.min(ROOT_BITS, maxLength);
+        table = new int[1 << rootBits];
+        size = table.length;
+        place(values, 0, count, lengths, codes, 0, 0, rootBits);
+    }
+
+    /**
+     * Fills the entries of the table at <tt>offset</tt> for the codes of
+     * <tt>values[from]</tt> through <tt>values[to - 1]</tt>. Starts a secondary
+     * table for each group of codes too long for the current table.
+     * @param values values in the order of their codes
+     * @param from the index of the first value to place
+     * @param to one past the index of the last value to place
+     * @param lengths the code length of each value
+     * @param codes the code of each value
+     * @param consumed number of bits of each code resolved by earlier tables
+     * @param offset the offset of the current table
+     * @param width the width of the current table in bits
+     */
+    private void place(int[] values, int from, int to, int[] lengths, long[] codes,
+            int consumed, int offset, int width) {
+        int i = from;
+        while (i < to) {
+            int value = values[i];
+            int rest = lengths[value] - consumed;
+            if (rest <= width) {
+                int code = (int) codes[value] & ((1 << rest) - 1);
+                fillLeaf(value, rest, code, offset, width);
+                i++;
+            } else {
+                int prefix = prefix(codes[value], rest, width);
+                int maxRest = rest;
+                int j = i + 1;
+                while (j < to && lengths[values[j]] - consumed > width
+                        && prefix(codes[values[j]], lengths[values[j]] - consumed, width) == prefix) {
+                    maxRest = Math.max(maxRest, lengths[values[j]] - consumed);
+                    j++;
+                }
+                int subWidth = Math.min(SUB_BITS, maxRest - width);
+                int subOffset = allocate(1 << subWidth);
+                table[offset + prefix] = LINK | (subWidth << 24) | subOffset;
+                place(values, i, j, lengths, codes, consumed + width, subOffset, subWidth);
+                i = j;
+            }
+        }
+    }
+
+    /**
+     * The first <tt>width</tt> of the last <tt>rest</tt> bits of a code.
+     * pre: rest > width
+     * @param code the code
+     * @param rest number of bits of the code not yet resolved
+     * @param width the width of the current table in bits
+     * @return the index of the code in the current table
+     */
+    private static int prefix(long code, int rest, int width) {
+        return (int) (code >>> (rest - width)) & ((1 << width) - 1);
+    }
+
+    /**
+     * Fills the entries of the table at <tt>offset</tt> that begin with
+     * the last <tt>depth</tt> bits of a leaf's code.
+     * @param value the value of the leaf
+     * @param depth number of bits of the code that fall in this table
+     * @param code the bits of the code that fall in this table
+     * @param offset the offset of the table
+     * @param width the width of the table in bits
+     */
+    private void fillLeaf(int value, int depth, int code, int offset, int width) {
+        int entry = (value << 8) | depth;
+        int start = offset + (code << (width - depth));
+        Arrays.fill(table, start, start + (1 << (width - depth)), entry);
+    }
+
+
+    /**
+     * Reserves <tt>count</tt> zeroed entries at the end of the table.
+     * @param count the number of entries needed
+     * @return the offset of the first reserved entry
+     */
+    private int allocate(int count) {
+        if (size + count > table.length) {
+            int[] bigger = new int[Math.max(table.length * 2, size + count)];
+            System.arraycopy(table, 0, bigger, 0, size);
+            table = bigger;
+        }
+        int offset = size;
+        size += count;
+        return offset;
+    }
+
+
+    /**
+     * Decodes values from <tt>in</tt> and writes them to <tt>out</tt> as
+     * bytes until the PSEUDO_EOF value is decoded.
+     * @param in the compressed data positioned just after the header
+     * @param out the stream to write the decoded bytes to
+     * @return the number of bits written to <tt>out</tt>, or
+     * Decompressor.NO_PSEUDO_ERROR_CODE if the data ends without a PSEUDO_EOF
+     * @throws IOException if reading from input or writing to output fails
+     */
+    public long decode(BitInputStream in, OutputStream out) throws IOException {
+        if (onlyValue != -1) {
+            return onlyValue == PSEUDO_EOF ? 0 : Decompressor.NO_PSEUDO_ERROR_CODE;
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int buffered = 0;
+        long totalBitsWritten = 0;
+        int value = decodeValue(in);
+        while (value != -1 && value != PSEUDO_EOF) {
+            buffer[buffered++] = (byte) value;
+            if (buffered == buffer.length) {
+                out.write(buffer, 0, buffered);
+                buffered = 0;
+            }
+            totalBitsWritten += BITS_PER_WORD;
+            value = decodeValue(in);
+        }
+        out.write(buffer, 0, buffered);
+        return value == PSEUDO_EOF ? totalBitsWritten : Decompressor.NO_PSEUDO_ERROR_CODE;
+    }
+
+    /**
+     * Decodes the next value.
+     * @param in the compressed data
+     * @return the value decoded, or -1 if the data ends or is not a valid code
+     * @throws IOException if reading from input fails
+     */
+    private int decodeValue(BitInputStream in) throws IOException {
+        int width = rootBits;
+        int entry = table[in.peekBits(width)];
+        while (entry < 0) {
+            if (in.skipBits(width) == -1) {
+                return -1;
+            }
+            width = (entry >>> 24) & 0x7F;
+            entry = table[(entry & OFFSET_MASK) + in.peekBits(width)];
+        }
+        int length = entry & LENGTH_MASK;
+        if (length == 0 || in.skipBits(length) == -1) {
+            return -1;
+        }
+        return entry >>> 8;
+    }
+}
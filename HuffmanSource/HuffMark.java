@@ -1,53 +1,106 @@
 package HuffmanSource;
 
 import javax.swing.JFileChooser;
-import javax.swing.JOptionPane;
 
 import java.io.*;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
+/**
+ * Times the compression of every file in a directory.
+ * <P>
+ * Run with no arguments, a directory is picked with a JFileChooser and each
+ * file in it is compressed once with STORE_COUNTS into a .hf file next to it.
+ * <P>
+ * Run with a directory on the command line, HuffMark needs no display. Every
+ * file is compressed and uncompressed with each header format asked for and
+ * with java.util.zip.Deflater as a baseline, on a pool of worker threads.
+ * After the warm-up iterations the fastest of the measured iterations is
+ * reported for each file in each direction, in MB/s of uncompressed data,
+ * along with the compression ratio (compressed size over original size) and
+ * whether every round trip gave back the original bytes. The totals for a
+ * format are timed over the whole pool. Compressed files go to a temporary
+ * directory that is deleted afterwards. The results can also be written as
+ * CSV and JSON so runs can be compared over time. The exit status is 1 if a
+ * round trip failed.
+ */
 public class HuffMark {
-    protected static JFileChooser ourOpenChooser = new JFileChooser(System
-            .getProperties().getProperty("user.dir"));
-    static {
-        ourOpenChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
-    }
-    
+    // made by doMark, so headless runs never touch Swing
+    protected static JFileChooser ourOpenChooser;
+
+    private static final String USAGE = String.join("\n",
+            "usage: java HuffmanSource.HuffMark [options] directory",
+            "  -formats list     header formats to time, from COUNTS, COMPACT, TREE, CUSTOM, BLOCKS",
+            "                    (default all of them)",
+            "  -threads n        number of files coded at the same time (default one per processor)",
+            "  -warmup n         iterations run before timing (default 1)",
+            "  -iterations n     timed iterations, the fastest is reported (default 3)",
+            "  -level n          Deflater compression level for the baseline, 0 to 9",
+            "                    (default -1, Deflater.DEFAULT_COMPRESSION)",
+            "  -csv file         also write the results as CSV",
+            "  -json file        also write the results as JSON",
+            "  -estimate format  instead of timing, compare the sampled estimate of each",
+            "                    file's compressed size in a format other than BLOCKS",
+            "                    with the size preprocessCompress counts",
+            "  -chunk n          bytes in each of the 64 chunks -estimate samples (default 16384)",
+            "With no arguments a directory is chosen in a dialog.");
+
+    // Number of bytes in a megabyte as reported.
+    private static final double BYTES_PER_MB = 1e6;
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final int BUFFER_SIZE = 1 << 16;
+
     private double myTotalCompressTime;
     private long myTotalUncompressedBytes;
     private long myTotalCompressedBytes;
-    
+
     private IHuffProcessor myHuffer;
     private static String SUFFIX = ".hf";
     private static boolean FAST_READER = true;
-    
+
     public void compress(File f) throws IOException{
-        
+
         if (f.getName().endsWith(SUFFIX)) return;  // don't read .hf files!
         if (f.isDirectory()) return; // don't read directories
-        
-        double start = System.currentTimeMillis();
+
+        long start = System.nanoTime();
         myHuffer.preprocessCompress(getFastByteReader(f), IHuffProcessor.STORE_COUNTS);
         File outFile = new File(getCompressedName(f));
         FileOutputStream out = new FileOutputStream(outFile);
         System.out.println("compressing to: "+outFile.getCanonicalPath());
         myHuffer.compress(getFastByteReader(f), out,true);
-        double end = System.currentTimeMillis();
-        double time = (end-start)/1000.0;
-        
+        double time = (System.nanoTime() - start) / NANOS_PER_SECOND;
+
         myTotalUncompressedBytes += f.length();
         myTotalCompressedBytes += outFile.length();
         myTotalCompressTime += time;
-        
+
         System.out.printf("%s from\t %d to\t %d in\t %.3f\n",f.getName(),f.length(),outFile.length(),time);
-        
+
     }
-    
+
     public void doMark() throws IOException{
         if (myHuffer == null){
             myHuffer = new SimpleHuffProcessor();
         }
+        if (ourOpenChooser == null) {
+            ourOpenChooser = new JFileChooser(System.getProperties().getProperty("user.dir"));
+            ourOpenChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        }
         int action = ourOpenChooser.showOpenDialog(null);
         if (action == JFileChooser.APPROVE_OPTION){
             File dir = ourOpenChooser.getSelectedFile();
@@ -62,13 +115,442 @@ public class HuffMark {
             System.out.printf("compression time: %.3f\n",myTotalCompressTime);
         }
     }
-    
+
+    /**
+     * Times every file in <tt>dir</tt> with each codec, as described for the
+     * command line.
+     * pre: threads > 0, warmup >= 0, iterations > 0
+     * @param dir the directory whose files are timed, .hf files and
+     * subdirectories are skipped
+     * @param codecs the codecs to time
+     * @param threads number of files coded at the same time
+     * @param warmup number of untimed iterations
+     * @param iterations number of timed iterations
+     * @return the totals of each codec, the results of each file in them
+     * @throws IOException if a file can't be read or the temporary files
+     * can't be written
+     */
+    public List<Total> mark(File dir, List<Codec> codecs, int threads, int warmup,
+            int iterations) throws IOException {
+        File[] list = dir.listFiles();
+        if (list == null) {
+            throw new IOException("not a directory: " + dir);
+        }
+        Arrays.sort(list);
+        List<File> files = new ArrayList<>();
+        for (File f : list) {
+            if (f.isFile() && !f.getName().endsWith(SUFFIX)) {
+                files.add(f);
+            }
+        }
+        long[] checksums = new long[files.size()];
+        for (int i = 0; i < checksums.length; i++) {
+            CheckedSink sink = new CheckedSink();
+            try (InputStream in = getFastByteReader(files.get(i))) {
+                in.transferTo(sink);
+            }
+            checksums[i] = sink.crc.getValue();
+        }
+        File work = Files.createTempDirectory("huffmark").toFile();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Total> totals = new ArrayList<>();
+        try {
+            for (Codec codec : codecs) {
+                Total total = new Total(codec.name());
+                for (int i = 0; i < files.size(); i++) {
+                    total.results.add(new Result(files.get(i), codec.name()));
+                }
+                for (int iteration = 0; iteration < warmup + iterations; iteration++) {
+                    boolean timed = iteration >= warmup;
+                    List<Callable<Void>> compressTasks = new ArrayList<>();
+                    List<Callable<Void>> uncompressTasks = new ArrayList<>();
+                    for (int i = 0; i < files.size(); i++) {
+                        Result result = total.results.get(i);
+                        File compressed = new File(work, i + "." + codec.name());
+                        long checksum = checksums[i];
+                        compressTasks.add(() -> {
+                            try {
+                                long start = System.nanoTime();
+                                codec.compress(result.file, compressed);
+                                result.recordCompress(System.nanoTime() - start, timed);
+                                result.compressedBytes = compressed.length();
+                            } catch (IOException | RuntimeException e) {
+                                result.fail(e);
+                            }
+                            return null;
+                        });
+                        uncompressTasks.add(() -> {
+                            CheckedSink sink = new CheckedSink();
+                            try {
+                                long start = System.nanoTime();
+                                codec.uncompress(compressed, sink);
+                                result.recordUncompress(System.nanoTime() - start, timed);
+                            } catch (IOException | RuntimeException e) {
+                                result.fail(e);
+                            }
+                            result.verified &= sink.count == result.bytes
+                                    && sink.crc.getValue() == checksum;
+                            return null;
+                        });
+                    }
+                    total.recordCompress(runAll(pool, compressTasks), timed);
+                    total.recordUncompress(runAll(pool, uncompressTasks), timed);
+                }
+                totals.add(total);
+                for (int i = 0; i < files.size(); i++) {
+                    new File(work, i + "." + codec.name()).delete();
+                }
+            }
+        } finally {
+            pool.shutdown();
+            work.delete();
+        }
+        return totals;
+    }
+
+    /**
+     * Compares the estimate of each file's compressed size made by a
+     * CompressibilityEstimator with the exact size preprocessCompress
+     * counts, and prints both, the error of the estimate as a percentage of
+     * the exact size, whether the exact size is within the estimate's
+     * confidence bound, and the time each took. The mean and largest error
+     * follow.
+     * @param dir the directory whose files are estimated, .hf files and
+     * subdirectories are skipped
+     * @param headerFormat the header format to estimate
+     * @param estimator the estimator to use
+     * @param out where to print
+     * @throws IOException if a file can't be read
+     */
+    public static void estimate(File dir, int headerFormat, CompressibilityEstimator estimator,
+            PrintStream out) throws IOException {
+        File[] list = dir.listFiles();
+        if (list == null) {
+            throw new IOException("not a directory: " + dir);
+        }
+        Arrays.sort(list);
+        String row = "%-28s %12s %12s %10s %12s %8s %7s %9s %9s%n";
+        out.printf(row, "file", "bytes", "estimate", "+/-", "exact", "error %", "within",
+                "est ms", "exact ms");
+        int files = 0;
+        int within = 0;
+        double errorSum = 0;
+        double errorMax = 0;
+        for (File f : list) {
+            if (!f.isFile() || f.getName().endsWith(SUFFIX)) {
+                continue;
+            }
+            long start = System.nanoTime();
+            CompressibilityEstimator.Estimate e = estimator.estimate(f, headerFormat);
+            long estimateTime = System.nanoTime() - start;
+            SimpleHuffProcessor huffer = new SimpleHuffProcessor();
+            start = System.nanoTime();
+            long exact = f.length() * IHuffConstants.BITS_PER_WORD
+                    - huffer.preprocessCompressLong(getFastByteReader(f), headerFormat);
+            long exactTime = System.nanoTime() - start;
+            double error = exact == 0 ? 0 : 100.0 * (e.compressedBits() - exact) / exact;
+            boolean inBound = e.lowestBits() <= exact && exact <= e.highestBits();
+            files++;
+            within += inBound ? 1 : 0;
+            errorSum += Math.abs(error);
+            errorMax = Math.max(errorMax, Math.abs(error));
+            out.printf(Locale.ROOT, row, f.getName(), f.length(), bytes(e.compressedBits()),
+                    bytes(e.marginBits()), bytes(exact), String.format(Locale.ROOT, "%.2f", error),
+                    inBound, format(estimateTime / 1e6), format(exactTime / 1e6));
+        }
+        out.println("--------");
+        out.printf(Locale.ROOT, "%d files: mean error %.2f%%, largest %.2f%%, %d within the bound%n",
+                files, files == 0 ? 0 : errorSum / files, errorMax, within);
+    }
+
+    // A number of bits as whole bytes, rounded up.
+    private static long bytes(long bits) {
+        return (bits + IHuffConstants.BITS_PER_WORD - 1) / IHuffConstants.BITS_PER_WORD;
+    }
+
+    /**
+     * Runs tasks on the pool and waits for all of them.
+     * @param pool the worker threads
+     * @param tasks the tasks to run
+     * @return the time from the first task starting to the last one ending
+     * @throws IOException if a task fails
+     */
+    private static long runAll(ExecutorService pool, List<Callable<Void>> tasks)
+            throws IOException {
+        long start = System.nanoTime();
+        try {
+            for (Future<Void> task : pool.invokeAll(tasks)) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while timing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("error while timing", e.getCause());
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Prints a line for each file and the totals of each codec.
+     * @param totals the results of mark
+     * @param out where to print
+     */
+    public static void print(List<Total> totals, PrintStream out) {
+        String row = "%-28s %-8s %12s %12s %7s %10s %10s %s%n";
+        out.printf(row, "file", "codec", "bytes", "compressed", "ratio", "comp MB/s",
+                "uncomp MB/s", "verified");
+        for (Total total : totals) {
+            for (Result r : total.results) {
+                out.printf(Locale.ROOT, row, r.file.getName(), r.codec, r.bytes, r.compressedBytes,
+                        format(r.ratio()), format(r.compressSpeed()), format(r.uncompressSpeed()),
+                        r.verified);
+            }
+        }
+        for (Total total : totals) {
+            for (Result r : total.results) {
+                if (r.error != null) {
+                    out.println(r.file.getName() + " " + r.codec + ": " + r.error);
+                }
+            }
+        }
+        out.println("--------");
+        for (Total t : totals) {
+            out.printf(Locale.ROOT, row, "TOTAL", t.codec, t.bytes(), t.compressedBytes(),
+                    format(t.ratio()), format(t.compressSpeed()), format(t.uncompressSpeed()),
+                    t.verified());
+        }
+    }
+
+    /**
+     * Writes a row for each file and a TOTAL row for each codec as CSV.
+     * @param totals the results of mark
+     * @param out where to write
+     */
+    public static void writeCsv(List<Total> totals, PrintStream out) {
+        out.println("file,codec,bytes,compressed_bytes,ratio,compress_mb_s,uncompress_mb_s,verified");
+        String row = "%s,%s,%d,%d,%s,%s,%s,%b%n";
+        for (Total total : totals) {
+            for (Result r : total.results) {
+                out.printf(Locale.ROOT, row, csv(r.file.getName()), r.codec, r.bytes,
+                        r.compressedBytes, format(r.ratio()), format(r.compressSpeed()),
+                        format(r.uncompressSpeed()), r.verified);
+            }
+        }
+        for (Total t : totals) {
+            out.printf(Locale.ROOT, row, "TOTAL", t.codec, t.bytes(), t.compressedBytes(),
+                    format(t.ratio()), format(t.compressSpeed()), format(t.uncompressSpeed()),
+                    t.verified());
+        }
+    }
+
+    /**
+     * Writes the settings, the results of each file and the totals of
+     * each codec as a JSON object.
+     * @param totals the results of mark
+     * @param dir the directory that was timed
+     * @param settings the command line options used, such as threads
+     * @param out where to write
+     */
+    public static void writeJson(List<Total> totals, File dir, String settings, PrintStream out) {
+        out.println("{");
+        out.printf("  \"directory\": %s,%n", json(dir.getPath()));
+        out.printf("  \"timestamp\": %s,%n", json(Instant.now().toString()));
+        out.printf("  \"java\": %s,%n", json(System.getProperty("java.version")));
+        out.printf("  \"settings\": %s,%n", json(settings));
+        out.println("  \"files\": [");
+        List<String> rows = new ArrayList<>();
+        for (Total total : totals) {
+            for (Result r : total.results) {
+                rows.add(String.format(Locale.ROOT, "    {\"file\": %s, \"codec\": %s, %s}",
+                        json(r.file.getName()), json(r.codec), jsonFields(r.bytes,
+                        r.compressedBytes, r.ratio(), r.compressSpeed(), r.uncompressSpeed(),
+                        r.verified)));
+            }
+        }
+        out.println(String.join(",\n", rows));
+        out.println("  ],");
+        out.println("  \"totals\": [");
+        rows.clear();
+        for (Total t : totals) {
+            rows.add(String.format(Locale.ROOT, "    {\"codec\": %s, %s}", json(t.codec),
+                    jsonFields(t.bytes(), t.compressedBytes(), t.ratio(), t.compressSpeed(),
+                    t.uncompressSpeed(), t.verified())));
+        }
+        out.println(String.join(",\n", rows));
+        out.println("  ]");
+        out.println("}");
+    }
+
+    // The measurements of one row as JSON fields.
+    private static String jsonFields(long bytes, long compressed, double ratio,
+            double compressSpeed, double uncompressSpeed, boolean verified) {
+        return String.format(Locale.ROOT, "\"bytes\": %d, \"compressed_bytes\": %d, "
+                + "\"ratio\": %s, \"compress_mb_s\": %s, \"uncompress_mb_s\": %s, "
+                + "\"verified\": %b", bytes, compressed, format(ratio), format(compressSpeed),
+                format(uncompressSpeed), verified);
+    }
+
+    // A number with three decimals, or 0 for an empty file or a failed run.
+    private static String format(double value) {
+        return Double.isFinite(value) ? String.format(Locale.ROOT, "%.3f", value) : "0";
+    }
+
+    // A string as a JSON string literal.
+    private static String json(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    // A file name as a CSV field, quoted if it holds a comma or quote.
+    private static String csv(String s) {
+        if (s.indexOf(',') == -1 && s.indexOf('"') == -1) {
+            return s;
+        }
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+
     public static void main(String[] args) throws IOException{
-        HuffMark hf = new HuffMark();
-        hf.doMark();
+        if (args.length == 0) {
+            HuffMark hf = new HuffMark();
+            hf.doMark();
+            return;
+        }
+        List<Codec> codecs = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int warmup = 1;
+        int iterations = 3;
+        int level = Deflater.DEFAULT_COMPRESSION;
+        String csvFile = null;
+        String jsonFile = null;
+        String formats = "COUNTS,COMPACT,TREE,CUSTOM,BLOCKS";
+        String estimate = null;
+        int chunk = CompressibilityEstimator.DEFAULT_CHUNK_SIZE;
+        File dir = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if (!option.startsWith("-")) {
+                    if (dir != null) {
+                        throw new IllegalArgumentException("only one directory may be given");
+                    }
+                    dir = new File(option);
+                    continue;
+                }
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException(option + " needs a value");
+                }
+                String value = args[++i];
+                if (option.equals("-formats")) {
+                    formats = value;
+                } else if (option.equals("-threads")) {
+                    threads = count(option, value, 1);
+                } else if (option.equals("-warmup")) {
+                    warmup = count(option, value, 0);
+                } else if (option.equals("-iterations")) {
+                    iterations = count(option, value, 1);
+                } else if (option.equals("-level")) {
+                    level = Integer.parseInt(value);
+                    new Deflater(level).end();
+                } else if (option.equals("-csv")) {
+                    csvFile = value;
+                } else if (option.equals("-json")) {
+                    jsonFile = value;
+                } else if (option.equals("-chunk")) {
+                    chunk = count(option, value, 1);
+                } else if (option.equals("-estimate")) {
+                    estimate = value;
+                    if (headerFormat(value) == IHuffConstants.STORE_BLOCKS) {
+                        throw new IllegalArgumentException("BLOCKS can't be estimated");
+                    }
+                } else {
+                    throw new IllegalArgumentException("unknown option " + option);
+                }
+            }
+            if (dir == null) {
+                throw new IllegalArgumentException("no directory given");
+            }
+            for (String format : formats.split(",")) {
+                codecs.add(new HuffProcessorCodec(format.trim()));
+            }
+            codecs.add(new DeflateCodec(level));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        if (estimate != null) {
+            estimate(dir, headerFormat(estimate), new CompressibilityEstimator(chunk,
+                    CompressibilityEstimator.DEFAULT_CHUNK_COUNT), System.out);
+            return;
+        }
+        List<Total> totals = new HuffMark().mark(dir, codecs, threads, warmup, iterations);
+        print(totals, System.out);
+        String settings = String.format("formats=%s threads=%d warmup=%d iterations=%d level=%d",
+                formats, threads, warmup, iterations, level);
+        if (csvFile != null) {
+            try (PrintStream out = new PrintStream(new FileOutputStream(csvFile))) {
+                writeCsv(totals, out);
+            }
+        }
+        if (jsonFile != null) {
+            try (PrintStream out = new PrintStream(new FileOutputStream(jsonFile))) {
+                writeJson(totals, dir, settings, out);
+            }
+        }
+        for (Total t : totals) {
+            if (!t.verified()) {
+                System.exit(1);
+            }
+        }
+    }
+
+    // The header format constant for a name given to -formats or -estimate.
+    private static int headerFormat(String name) {
+        switch (name) {
+            case "COUNTS":
+                return IHuffConstants.STORE_COUNTS;
+            case "COMPACT":
+                return IHuffConstants.STORE_COMPACT_COUNTS;
+            case "TREE":
+                return IHuffConstants.STORE_TREE;
+            case "CUSTOM":
+                return IHuffConstants.STORE_CUSTOM;
+            case "BLOCKS":
+                return IHuffConstants.STORE_BLOCKS;
+            default:
+                throw new IllegalArgumentException("unknown format " + name);
+        }
     }
-    
-    
+
+    // Parses the value of an option that must be a number of at least min.
+    private static int count(String option, String value, int min) {
+        int n;
+        try {
+            n = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " needs a number, not " + value);
+        }
+        if (n < min) {
+            throw new IllegalArgumentException(option + " must be at least " + min);
+        }
+        return n;
+    }
+
+
     private String getCompressedName(File f){
         String name = f.getName();
         String path = null;
@@ -82,29 +564,318 @@ public class HuffMark {
         String newName = path.substring(0, pos) + name + SUFFIX;
         return newName;
     }
-    
-    
-    private InputStream getFastByteReader(File f) throws FileNotFoundException{
-        
+
+
+    private static InputStream getFastByteReader(File f) throws FileNotFoundException{
+
         if (!FAST_READER){
             return new FileInputStream(f);
         }
-        
-        ByteBuffer buffer = null;
+
          try {
-             FileChannel channel = new FileInputStream(f).getChannel();
-             buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
-             byte[] barray = new byte[buffer.limit()];
-           
-             if (barray.length != channel.size()){               
-                 System.err.println(String.format("Reading %s error: lengths differ %d %ld\n",f.getName(),barray.length,channel.size()));
-             }
-             buffer.get(barray);
-             return new ByteArrayInputStream(barray);
+             return new MappedInputStream(f);
          } catch (IOException e) {
              e.printStackTrace();
          }
          return null;
     }
-    
+
+    /**
+     * A way of compressing a file that HuffMark can time.
+     */
+    public interface Codec {
+
+        /**
+         * @return the name shown in the results
+         */
+        String name();
+
+        /**
+         * Compresses one file into another.
+         * @param in the file to compress
+         * @param out the file to write the compressed data to
+         * @throws IOException if reading or writing fails
+         */
+        void compress(File in, File out) throws IOException;
+
+        /**
+         * Uncompresses a file written by compress.
+         * @param in the compressed file
+         * @param out the stream to write the original data to
+         * @throws IOException if reading or writing fails
+         */
+        void uncompress(File in, OutputStream out) throws IOException;
+    }
+
+    /*
+     * SimpleHuffProcessor with one header format. Each file is coded on the
+     * thread that picked it up, so STORE_BLOCKS uses one thread per file.
+     */
+    private static class HuffProcessorCodec implements Codec {
+        private final String name;
+        private final int headerFormat;
+
+        private HuffProcessorCodec(String name) {
+            this.name = name;
+            this.headerFormat = headerFormat(name);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public void compress(File in, File out) throws IOException {
+            SimpleHuffProcessor huffer = processor();
+            huffer.preprocessCompressLong(getFastByteReader(in), headerFormat);
+            huffer.compressLong(getFastByteReader(in),
+                    new BufferedOutputStream(new FileOutputStream(out), BUFFER_SIZE), true);
+        }
+
+        public void uncompress(File in, OutputStream out) throws IOException {
+            try (InputStream input = getFastByteReader(in)) {
+                processor().uncompressLong(input, out);
+            }
+        }
+
+        private static SimpleHuffProcessor processor() {
+            SimpleHuffProcessor huffer = new SimpleHuffProcessor();
+            huffer.setThreadCount(1);
+            huffer.setViewer(new QuietViewer());
+            return huffer;
+        }
+    }
+
+    /*
+     * java.util.zip.Deflater at a given level, the baseline for the Huffman codecs.
+     */
+    private static class DeflateCodec implements Codec {
+        private final int level;
+
+        private DeflateCodec(int level) {
+            this.level = level;
+        }
+
+        public String name() {
+            return "DEFLATE";
+        }
+
+        public void compress(File in, File out) throws IOException {
+            Deflater deflater = new Deflater(level);
+            try (InputStream input = getFastByteReader(in);
+                    OutputStream output = new DeflaterOutputStream(new BufferedOutputStream(
+                            new FileOutputStream(out), BUFFER_SIZE), deflater, BUFFER_SIZE)) {
+                input.transferTo(output);
+            } finally {
+                deflater.end();
+            }
+        }
+
+        public void uncompress(File in, OutputStream out) throws IOException {
+            try (InputStream input = new InflaterInputStream(getFastByteReader(in),
+                    new Inflater(), BUFFER_SIZE)) {
+                input.transferTo(out);
+            }
+        }
+    }
+
+    /*
+     * A viewer for headless runs. A failed round trip shows up as a
+     * verification failure, so messages are dropped.
+     */
+    private static class QuietViewer implements IHuffViewer {
+        public void setModel(IHuffProcessor model) {
+        }
+
+        public void update(String s) {
+        }
+
+        public void showMessage(String s) {
+        }
+
+        public void showError(String s) {
+        }
+    }
+
+    /*
+     * Counts and checksums the bytes written to it.
+     */
+    private static class CheckedSink extends OutputStream {
+        private final CRC32 crc = new CRC32();
+        private long count;
+
+        public void write(int b) {
+            crc.update(b);
+            count++;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            crc.update(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * The measurements of one file with one codec. The times are the
+     * fastest of the timed iterations.
+     */
+    public static class Result {
+        private final File file;
+        private final String codec;
+        private final long bytes;
+        private long compressedBytes;
+        private long compressNanos = Long.MAX_VALUE;
+        private long uncompressNanos = Long.MAX_VALUE;
+        private boolean verified = true;
+        private String error;
+
+        private Result(File file, String codec) {
+            this.file = file;
+            this.codec = codec;
+            this.bytes = file.length();
+        }
+
+        // Records a codec that threw instead of finishing.
+        private void fail(Exception e) {
+            verified = false;
+            if (error == null) {
+                error = e.toString();
+            }
+        }
+
+        private void recordCompress(long nanos, boolean timed) {
+            if (timed) {
+                compressNanos = Math.min(compressNanos, nanos);
+            }
+        }
+
+        private void recordUncompress(long nanos, boolean timed) {
+            if (timed) {
+                uncompressNanos = Math.min(uncompressNanos, nanos);
+            }
+        }
+
+        /**
+         * @return the compressed size over the original size
+         */
+        public double ratio() {
+            return (double) compressedBytes / bytes;
+        }
+
+        /**
+         * @return MB of original data compressed per second
+         */
+        public double compressSpeed() {
+            return bytes / BYTES_PER_MB / (compressNanos / NANOS_PER_SECOND);
+        }
+
+        /**
+         * @return MB of original data given back per second
+         */
+        public double uncompressSpeed() {
+            return bytes / BYTES_PER_MB / (uncompressNanos / NANOS_PER_SECOND);
+        }
+
+        /**
+         * @return true if every round trip gave back the original bytes
+         */
+        public boolean verified() {
+            return verified;
+        }
+
+        /**
+         * @return the first exception a codec threw for this file, or null
+         */
+        public String error() {
+            return error;
+        }
+    }
+
+    /**
+     * The results of one codec over all the files, with the times taken
+     * by the whole pool. The times are the fastest of the timed iterations.
+     */
+    public static class Total {
+        private final String codec;
+        private final List<Result> results = new ArrayList<>();
+        private long compressNanos = Long.MAX_VALUE;
+        private long uncompressNanos = Long.MAX_VALUE;
+
+        private Total(String codec) {
+            this.codec = codec;
+        }
+
+        private void recordCompress(long nanos, boolean timed) {
+            if (timed) {
+                compressNanos = Math.min(compressNanos, nanos);
+            }
+        }
+
+        private void recordUncompress(long nanos, boolean timed) {
+            if (timed) {
+                uncompressNanos = Math.min(uncompressNanos, nanos);
+            }
+        }
+
+        /**
+         * @return the results of each file
+         */
+        public List<Result> results() {
+            return results;
+        }
+
+        /**
+         * @return the total size of the original files
+         */
+        public long bytes() {
+            long total = 0;
+            for (Result r : results) {
+                total += r.bytes;
+            }
+            return total;
+        }
+
+        /**
+         * @return the total size of the compressed files
+         */
+        public long compressedBytes() {
+            long total = 0;
+            for (Result r : results) {
+                total += r.compressedBytes;
+            }
+            return total;
+        }
+
+        /**
+         * @return the total compressed size over the total original size
+         */
+        public double ratio() {
+            return (double) compressedBytes() / bytes();
+        }
+
+        /**
+         * @return MB of original data compressed per second by the pool
+         */
+        public double compressSpeed() {
+            return bytes() / BYTES_PER_MB / (compressNanos / NANOS_PER_SECOND);
+        }
+
+        /**
+         * @return MB of original data given back per second by the pool
+         */
+        public double uncompressSpeed() {
+            return bytes() / BYTES_PER_MB / (uncompressNanos / NANOS_PER_SECOND);
+        }
+
+        /**
+         * @return true if every round trip of every file gave back the original bytes
+         */
+        public boolean verified() {
+            for (Result r : results) {
+                if (!r.verified) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -0,0 +1,273 @@
+package HuffmanSource;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A listener that adds up the measurements of every file it hears about,
+ * for a long-running service to report. Counters are LongAdders, so many
+ * threads can report at once without contending, and each phase keeps a
+ * histogram of its durations for percentiles. Histogram buckets split each
+ * power of two into four, so a percentile is the upper bound of a bucket
+ * and is at most 25% above the true value.
+ */
+public class HuffMetrics implements IHuffMetricsListener {
+
+    private final EnumMap<Phase, Histogram> phases = new EnumMap<>(Phase.class);
+    private final LongAdder filesCompressed = new LongAdder();
+    private final LongAdder compressBytesIn = new LongAdder();
+    private final LongAdder compressBytesOut = new LongAdder();
+    private final LongAdder symbols = new LongAdder();
+    private final LongAdder codeBits = new LongAdder();
+    private final LongAdder headerBits = new LongAdder();
+    private final DoubleAdder entropyBits = new DoubleAdder();
+    private final LongAdder filesUncompressed = new LongAdder();
+    private final LongAdder uncompressBytesIn = new LongAdder();
+    private final LongAdder uncompressBytesOut = new LongAdder();
+
+    /**
+     * Create a HuffMetrics with nothing counted yet.
+     */
+    public HuffMetrics() {
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, new Histogram());
+        }
+    }
+
+    public void phaseFinished(Phase phase, long nanos) {
+        phases.get(phase).add(nanos);
+    }
+
+    public void compressed(long bytesIn, long bytesOut, long symbols, long codeBits,
+            long headerBits, double entropyBits) {
+        filesCompressed.increment();
+        compressBytesIn.add(bytesIn);
+        compressBytesOut.add(bytesOut);
+        this.symbols.add(symbols);
+        this.codeBits.add(codeBits);
+        this.headerBits.add(headerBits);
+        this.entropyBits.add(entropyBits);
+    }
+
+    public void uncompressed(long bytesIn, long bytesOut) {
+        filesUncompressed.increment();
+        uncompressBytesIn.add(bytesIn);
+        uncompressBytesOut.add(bytesOut);
+    }
+
+    /**
+     * @param phase a phase
+     * @return the number of times the phase finished
+     */
+    public long count(Phase phase) {
+        return phases.get(phase).count.sum();
+    }
+
+    /**
+     * @param phase a phase
+     * @return the total time spent in the phase in nanoseconds
+     */
+    public long totalNanos(Phase phase) {
+        return phases.get(phase).total.sum();
+    }
+
+    /**
+     * A duration that the given fraction of the phase's runs took no longer than.
+     * pre: 0 <= fraction <= 1
+     * @param phase a phase
+     * @param fraction the fraction of runs, such as 0.99
+     * @return the duration in nanoseconds, at most 25% high, or 0 if the
+     * phase never ran
+     */
+    public long percentileNanos(Phase phase, double fraction) {
+        if (fraction < 0 || fraction > 1) {
+            throw new IllegalArgumentException("fraction must be from 0 to 1");
+        }
+        return phases.get(phase).percentile(fraction);
+    }
+
+    /**
+     * @return the number of files compressed
+     */
+    public long filesCompressed() {
+        return filesCompressed.sum();
+    }
+
+    /**
+     * @return the number of bytes compressed
+     */
+    public long compressBytesIn() {
+        return compressBytesIn.sum();
+    }
+
+    /**
+     * @return the number of bytes compress wrote
+     */
+    public long compressBytesOut() {
+        return compressBytesOut.sum();
+    }
+
+    /**
+     * @return the number of codes written, PSEUDO_EOF included
+     */
+    public long symbols() {
+        return symbols.sum();
+    }
+
+    /**
+     * @return the number of header bits written, see IHuffMetricsListener.compressed
+     */
+    public long headerBits() {
+        return headerBits.sum();
+    }
+
+    /**
+     * @return the mean number of bits per code written
+     */
+    public double averageCodeLength() {
+        return (double) codeBits.sum() / symbols.sum();
+    }
+
+    /**
+     * @return the entropy of the values compressed in bits per symbol, the
+     * least averageCodeLength could be
+     */
+    public double entropy() {
+        return entropyBits.sum() / symbols.sum();
+    }
+
+    /**
+     * @return the number of files uncompressed
+     */
+    public long filesUncompressed() {
+        return filesUncompressed.sum();
+    }
+
+    /**
+     * @return the number of compressed bytes uncompress read
+     */
+    public long uncompressBytesIn() {
+        return uncompressBytesIn.sum();
+    }
+
+    /**
+     * @return the number of bytes uncompress wrote
+     */
+    public long uncompressBytesOut() {
+        return uncompressBytesOut.sum();
+    }
+
+    /**
+     * Forgets everything counted so far. Reports that arrive while the
+     * counters are being cleared may be partly kept.
+     */
+    public void reset() {
+        for (Histogram histogram : phases.values()) {
+            histogram.reset();
+        }
+        for (LongAdder adder : new LongAdder[] {filesCompressed, compressBytesIn, compressBytesOut,
+                symbols, codeBits, headerBits, filesUncompressed, uncompressBytesIn,
+                uncompressBytesOut}) {
+            adder.reset();
+        }
+        entropyBits.reset();
+    }
+
+    /**
+     * A summary of everything counted, one line per phase and then the totals.
+     * @return the summary
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-13s %10s %12s %10s %10s %10s%n",
+                "phase", "count", "total ms", "mean us", "p50 us", "p99 us"));
+        for (Phase phase : Phase.values()) {
+            long count = count(phase);
+            sb.append(String.format(Locale.ROOT, "%-13s %10d %12.3f %10.1f %10.1f %10.1f%n",
+                    phase, count, totalNanos(phase) / 1e6,
+                    count == 0 ? 0 : totalNanos(phase) / 1e3 / count,
+                    percentileNanos(phase, 0.5) / 1e3, percentileNanos(phase, 0.99) / 1e3));
+        }
+        sb.append(String.format(Locale.ROOT, "compressed %d files, %d bytes to %d, %d header bits%n",
+                filesCompressed(), compressBytesIn(), compressBytesOut(), headerBits()));
+        sb.append(String.format(Locale.ROOT, "%d symbols, %.4f bits per code, entropy %.4f%n",
+                symbols(), averageCodeLength(), entropy()));
+        sb.append(String.format(Locale.ROOT, "uncompressed %d files, %d bytes to %d%n",
+                filesUncompressed(), uncompressBytesIn(), uncompressBytesOut()));
+        return sb.toString();
+    }
+
+    /*
+     * Counts of durations in buckets, four to each power of two. Durations
+     * below four nanoseconds get a bucket each.
+     */
+    private static class Histogram {
+        private static final int SUB_BITS = 2;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB_BUCKETS;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+
+        private Histogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void add(long nanos) {
+            nanos = Math.max(0, nanos);
+            buckets[bucket(nanos)].increment();
+            count.increment();
+            total.add(nanos);
+        }
+
+        // The bucket that holds a duration.
+        private static int bucket(long nanos) {
+            if (nanos < SUB_BUCKETS) {
+                return (int) nanos;
+            }
+            int log = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+            int sub = (int) (nanos >>> (log - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (log - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        // The smallest duration in a bucket.
+        private static long lowest(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int log = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (log - SUB_BITS);
+        }
+
+        private long percentile(double fraction) {
+            long[] counts = new long[BUCKETS];
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+                seen += counts[i];
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * seen));
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS && seen > 0; i++) {
+                cumulative += counts[i];
+                if (cumulative >= rank) {
+                    return i + 1 < BUCKETS ? lowest(i + 1) - 1 : Long.MAX_VALUE;
+                }
+            }
+            return 0;
+        }
+
+        private void reset() {
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+            count.reset();
+            total.reset();
+        }
+    }
+}
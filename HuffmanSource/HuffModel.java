@@ -0,0 +1,347 @@
+package HuffmanSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * The code for one set of counts, built once and never changed: the counts,
+ * the code of each value, the header that describes the code in the
+ * STORE_COUNTS, STORE_COMPACT_COUNTS, STORE_TREE or STORE_CUSTOM format
+ * and the table that decodes it. A model kept in a ModelRegistry instead has the STORE_MODEL
+ * format, whose header is just the model's ID, and a canonical code like
+ * STORE_CUSTOM's. A model is immutable, so once built it can be shared by any
+ * number of threads, each compressing and uncompressing with HuffCodec at
+ * the same time without locks.
+ * <P>
+ * A model built from the counts of one input can compress other inputs as
+ * long as they only hold values that occur in the counts. To compress any
+ * input with a model trained on a sample, count every value at least once.
+ */
+public final class HuffModel implements IHuffConstants {
+
+    private final int headerFormat;
+    private final int id;
+    private final long[] counts;
+    private final long[] codes;
+    private final int[] lengths;
+    private final HuffDecodeTable table;
+    // the header after the magic number and format, a whole byte at a time
+    private final byte[] header;
+    private final int headerBits;
+    private final long dataBits;
+
+    /**
+     * Builds the model from counts. Every code is kept within
+     * CanonicalCode.MAX_LENGTH bits.
+     * pre: as for <code>fromCounts(long[], int, int)</code>
+     * @param counts the count of each byte value
+     * @param headerFormat STORE_COUNTS, STORE_COMPACT_COUNTS, STORE_TREE or STORE_CUSTOM
+     * @return the model
+     */
+    public static HuffModel fromCounts(long[] counts, int headerFormat) {
+        return fromCounts(counts, headerFormat, CanonicalCode.MAX_LENGTH);
+    }
+
+    /**
+     * Builds the model from counts, keeping every code within a length
+     * limit except for STORE_COUNTS and STORE_COMPACT_COUNTS, whose headers
+     * only let the decompressor rebuild the Huffman tree itself. PSEUDO_EOF
+     * is counted once.
+     * pre: counts != null, counts.length == ALPH_SIZE, 0 <= every count <
+     * HuffTree.MAX_COUNT, and <= Integer.MAX_VALUE for the count formats,
+     * BITS_PER_WORD + 1 <= maxCodeLength <= CanonicalCode.MAX_LENGTH
+     * @param counts the count of each byte value
+     * @param headerFormat STORE_COUNTS, STORE_COMPACT_COUNTS, STORE_TREE or STORE_CUSTOM
+     * @param maxCodeLength the longest code allowed
+     * @return the model
+     */
+    public static HuffModel fromCounts(long[] counts, int headerFormat, int maxCodeLength) {
+        if (headerFormat != STORE_COUNTS && headerFormat != STORE_COMPACT_COUNTS
+                && headerFormat != STORE_TREE && headerFormat != STORE_CUSTOM) {
+            throw new IllegalArgumentException("a model has a STORE_COUNTS, "
+                    + "STORE_COMPACT_COUNTS, STORE_TREE or STORE_CUSTOM header, not "
+                    + headerFormat);
+        }
+        if (maxCodeLength < BITS_PER_WORD + 1 || maxCodeLength > CanonicalCode.MAX_LENGTH) {
+            throw new IllegalArgumentException("max code length must be from "
+                    + (BITS_PER_WORD + 1) + " to " + CanonicalCode.MAX_LENGTH);
+        }
+        long[] freq = withEnd(counts);
+        if (isCounts(headerFormat)) {
+            for (int value = 0; value < ALPH_SIZE; value++) {
+                if (freq[value] > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("value " + value + " occurs " + freq[value]
+                            + " times, more than a count header can hold");
+                }
+            }
+        }
+        return new HuffModel(freq, headerFormat, -1, maxCodeLength);
+    }
+
+    /**
+     * Builds a model with the STORE_MODEL format, for a ModelRegistry.
+     * Files compressed with it hold only <tt>id</tt> as their header, so
+     * they can only be uncompressed with a registry that has the same model.
+     * pre: counts != null, counts.length == ALPH_SIZE, 0 <= every count < HuffTree.MAX_COUNT
+     * @param id the ID of the model in its registry
+     * @param counts the count of each byte value
+     * @return the model
+     */
+    public static HuffModel registered(int id, long[] counts) {
+        return new HuffModel(withEnd(counts), STORE_MODEL, id, CanonicalCode.MAX_LENGTH);
+    }
+
+    /**
+     * @param headerFormat a header format
+     * @return true for STORE_COUNTS and STORE_COMPACT_COUNTS, whose headers
+     * hold the counts the decompressor builds the Huffman tree from
+     */
+    static boolean isCounts(int headerFormat) {
+        return headerFormat == STORE_COUNTS || headerFormat == STORE_COMPACT_COUNTS;
+    }
+
+    /**
+     * Copies byte counts and counts PSEUDO_EOF once.
+     * @param counts the count of each byte value
+     * @return the counts with PSEUDO_EOF's appended
+     */
+    private static long[] withEnd(long[] counts) {
+        if (counts.length != ALPH_SIZE) {
+            throw new IllegalArgumentException("need a count for each of the " + ALPH_SIZE
+                    + " byte values");
+        }
+        long[] freq = Arrays.copyOf(counts, ALPH_SIZE + 1);
+        freq[PSEUDO_EOF] = 1;
+        return freq;
+    }
+
+    /**
+     * Builds the model from the counts of every byte of a stream.
+     * The stream is read to its end and closed.
+     * @param in the stream to count
+     * @param headerFormat STORE_COUNTS, STORE_COMPACT_COUNTS, STORE_TREE or STORE_CUSTOM
+     * @return the model
+     * @throws IOException if reading the stream fails
+     */
+    public static HuffModel train(InputStream in, int headerFormat) throws IOException {
+        long[] counts = new long[ALPH_SIZE];
+        try (InputStream input = in) {
+            byte[] buffer = new byte[1 << 13];
+            for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+                for (int i = 0; i < read; i++) {
+                    counts[buffer[i] & 0xFF]++;
+                }
+            }
+        }
+        return fromCounts(counts, headerFormat);
+    }
+
+    // Builds the code, header and decoding table for freq, PSEUDO_EOF included.
+    private HuffModel(long[] freq, int headerFormat, int id, int maxCodeLength) {
+        this.headerFormat = headerFormat;
+        this.id = id;
+        this.counts = freq;
+        HuffTree tree = HuffTree.fromCounts(freq);
+        long[] codes = new long[ALPH_SIZE + 1];
+        int[] lengths = new int[ALPH_SIZE + 1];
+        tree.codes(codes, lengths);
+        if (!isCounts(headerFormat) && longest(lengths) > maxCodeLength) {
+            lengths = PackageMerge.lengths(freq, maxCodeLength);
+            tree = HuffTree.fromLengths(lengths);
+            tree.codes(codes, lengths);
+        }
+        if (headerFormat == STORE_CUSTOM || headerFormat == STORE_MODEL) {
+            // the canonical code for the same lengths, so the header holds only the lengths
+            if (tree.isLeaf()) {
+                lengths[tree.rootValue()] = 1;
+            }
+            codes = CanonicalCode.assign(lengths);
+            table = new HuffDecodeTable(lengths);
+        } else {
+            table = new HuffDecodeTable(tree);
+        }
+        this.codes = codes;
+        this.lengths = lengths;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitOutputStream out = new BitOutputStream(bytes);
+        int bits = 0;
+        if (headerFormat == STORE_COUNTS) {
+            for (int value = 0; value < ALPH_SIZE; value++) {
+                out.writeBits(BITS_PER_INT, freq[value]);
+                bits += BITS_PER_INT;
+            }
+        } else if (headerFormat == STORE_COMPACT_COUNTS) {
+            bits += CompactCounts.write(freq, out);
+        } else if (headerFormat == STORE_TREE) {
+            int treeSize = tree.nodeCount() + tree.leafCount() * (BITS_PER_WORD + 1);
+            out.writeBits(BITS_PER_INT, treeSize);
+            bits += BITS_PER_INT + tree.write(out);
+        } else if (headerFormat == STORE_CUSTOM) {
+            bits += CanonicalCode.writeLengths(lengths, out);
+        } else {
+            out.writeBits(BITS_PER_INT, id);
+            bits += BITS_PER_INT;
+        }
+        out.close();
+        header = bytes.toByteArray();
+        headerBits = bits;
+        long total = 0;
+        for (int value = 0; value < freq.length; value++) {
+            total += freq[value] * lengths[value];
+        }
+        dataBits = total;
+    }
+
+    /**
+     * The longest of the given code lengths.
+     * @param lengths the code length of each value
+     * @return the largest length
+     */
+    private static int longest(int[] lengths) {
+        int max = 0;
+        for (int length : lengths) {
+            max = Math.max(max, length);
+        }
+        return max;
+    }
+
+    /**
+     * @return the header format, STORE_COUNTS, STORE_COMPACT_COUNTS, STORE_TREE,
+     * STORE_CUSTOM or STORE_MODEL
+     */
+    public int headerFormat() {
+        return headerFormat;
+    }
+
+    /**
+     * @return the ID of a STORE_MODEL model in its registry, -1 for other formats
+     */
+    public int id() {
+        return id;
+    }
+
+    /**
+     * @return a copy of the count of each value, PSEUDO_EOF's included
+     */
+    public long[] counts() {
+        return counts.clone();
+    }
+
+    /**
+     * @return a copy of the code length of each value, PSEUDO_EOF's included,
+     * 0 for values that have no code
+     */
+    public int[] codeLengths() {
+        return lengths.clone();
+    }
+
+    /**
+     * Determines if the model has a code for a value.
+     * @param value a byte value or PSEUDO_EOF
+     * @return true if the value can be compressed with this model
+     */
+    public boolean hasCode(int value) {
+        return lengths[value] != 0;
+    }
+
+    /**
+     * @return the number of bits a file compressed with this model spends
+     * before its first code: the magic number, the format and the header
+     */
+    public long headerBits() {
+        return 2 * BITS_PER_INT + headerBits;
+    }
+
+    /**
+     * @return the number of bits a file compressed with this model would
+     * take for exactly the counted input, PSEUDO_EOF included, before the
+     * last byte is padded
+     */
+    public long compressedBits() {
+        return headerBits() + dataBits;
+    }
+
+    /**
+     * The number of bits this model's codes take for other counts, as when
+     * a STORE_MODEL model compresses input it was not trained on.
+     * @param freq the count of each value, PSEUDO_EOF included
+     * @return the number of bits, or -1 if some counted value has no code
+     */
+    long dataBits(long[] freq) {
+        long total = 0;
+        for (int i = 0; i < freq.length; i++) {
+            if (freq[i] != 0) {
+                if (lengths[i] == 0) {
+                    return -1;
+                }
+                total += freq[i] * lengths[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * The code of a value, in the low codeLength bits.
+     * @param value a byte value or PSEUDO_EOF
+     * @return the code
+     */
+    long code(int value) {
+        return codes[value];
+    }
+
+    /**
+     * @param value a byte value or PSEUDO_EOF
+     * @return the length of the code of value, 0 if it has none
+     */
+    int codeLength(int value) {
+        return lengths[value];
+    }
+
+    /**
+     * @return the table that decodes this model's codes
+     */
+    HuffDecodeTable decodeTable() {
+        return table;
+    }
+
+    /**
+     * Writes the magic number, the format and the header.
+     * @param out the stream to write to, at a byte boundary
+     * @return the number of bits written
+     * @throws IOException if writing fails
+     */
+    long writeHeader(BitOutputStream out) throws IOException {
+        out.writeBits(BITS_PER_INT, MAGIC_NUMBER);
+        out.writeBits(BITS_PER_INT, headerFormat);
+        int whole = headerBits / BITS_PER_WORD;
+        out.write(header, 0, whole);
+        int rest = headerBits % BITS_PER_WORD;
+        if (rest != 0) {
+            out.writeBits(rest, (header[whole] & 0xFF) >>> (BITS_PER_WORD - rest));
+        }
+        return headerBits();
+    }
+
+    /**
+     * Reads the magic number, format and header of a compressed file and
+     * compares them with this model's.
+     * @param in the compressed file, at its start
+     * @return true if the file starts with exactly this model's header
+     * @throws IOException if reading fails
+     */
+    boolean readHeader(BitInputStream in) throws IOException {
+        if (in.readBits(BITS_PER_INT) != MAGIC_NUMBER || in.readBits(BITS_PER_INT) != headerFormat) {
+            return false;
+        }
+        int whole = headerBits / BITS_PER_WORD;
+        for (int i = 0; i < whole; i++) {
+            if (in.readBits(BITS_PER_WORD) != (header[i] & 0xFF)) {
+                return false;
+            }
+        }
+        int rest = headerBits % BITS_PER_WORD;
+        return rest == 0 || in.readBits(rest) == (header[whole] & 0xFF) >>> (BITS_PER_WORD - rest);
+    }
+}
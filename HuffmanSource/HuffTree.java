@@ -0,0 +1,413 @@
+package HuffmanSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A Huffman tree held in parallel int arrays instead of TreeNode objects.
+ * Internal nodes are numbered from 0 and their children are kept in
+ * <tt>left</tt> and <tt>right</tt>. A child is either the number of an
+ * internal node or, for a leaf, the bitwise complement of the leaf's value,
+ * so every leaf reference is negative.
+ * <P>
+ * fromCounts builds the same tree as adding a TreeNode for each value in
+ * increasing order of value to a queue ordered by frequency, where equal
+ * nodes leave in the order they were added, and merging the two smallest
+ * nodes until one is left. Leaves are sorted by count once and
+ * merged nodes are created in order of count, so the two smallest nodes are
+ * always at the front of one of two arrays.
+ */
+public class HuffTree implements IHuffConstants {
+
+    // Number of low bits of a sort key that hold the value of a leaf.
+    private static final int VALUE_BITS = BITS_PER_WORD + 1;
+
+    /**
+     * Every count must be less than this, so a count and a value fit in one
+     * long. For more than ALPH_SIZE + 1 values the value takes more bits of
+     * the long and the limit is lower; see maxCount.
+     */
+    public static final long MAX_COUNT = 1L << (Long.SIZE - 1 - VALUE_BITS);
+
+    // Marks a tree header that does not describe a tree.
+    private static final int INVALID = Integer.MIN_VALUE;
+
+    private final int[] left;
+    private final int[] right;
+    private int internalCount;
+    private int root;
+
+    /**
+     * Create a tree with room for <tt>capacity</tt> internal nodes.
+     * @param capacity the largest number of internal nodes
+     */
+    private HuffTree(int capacity) {
+        left = new int[capacity];
+        right = new int[capacity];
+    }
+
+    /**
+     * Builds the Huffman tree for the given counts.
+     * pre: freq != null, at least one count is positive, no count is negative
+     * @param freq the count of each value, 0 for values that do not occur
+     * @return the Huffman tree
+     */
+    public static HuffTree fromCounts(int[] freq) {
+        return fromCounts(Arrays.stream(freq).asLongStream().toArray());
+    }
+
+    /**
+     * Builds the Huffman tree for the given 64-bit counts. Any number of
+     * values can be counted, though only trees of up to ALPH_SIZE + 1
+     * values can be written or coded by the file formats.
+     * pre: freq != null, at least one count is positive,
+     * 0 <= every count < maxCount(freq.length)
+     * @param freq the count of each value, 0 for values that do not occur
+     * @return the Huffman tree
+     */
+    public static HuffTree fromCounts(long[] freq) {
+        TreeBuildEvent event = new TreeBuildEvent();
+        event.begin();
+        int valueBits = valueBits(freq.length);
+        long valueMask = (1L << valueBits) - 1;
+        long maxCount = maxCount(freq.length);
+        int leafCount = 0;
+        long total = 0;
+        for (long count : freq) {
+            if (count < 0 || count >= maxCount) {
+                throw new IllegalArgumentException("counts must be from 0 to " + (maxCount - 1));
+            }
+            if (count != 0) {
+                leafCount++;
+                total += count;
+            }
+        }
+        if (leafCount == 0) {
+            throw new IllegalArgumentException("at least one count must be positive");
+        }
+        // sorted by count, then by value like the order of the queue
+        long[] leaves = new long[leafCount];
+        for (int value = 0, i = 0; value < freq.length; value++) {
+            if (freq[value] != 0) {
+                leaves[i++] = (freq[value] << valueBits) | value;
+            }
+        }
+        Arrays.sort(leaves);
+        HuffTree tree = new HuffTree(leafCount - 1);
+        long[] weight = new long[leafCount - 1];
+        int nextLeaf = 0;
+        int nextNode = 0;
+        for (int node = 0; node < leafCount - 1; node++) {
+            long sum = 0;
+            for (int child = 0; child < 2; child++) {
+                int id;
+                // a leaf leaves the queue before a merged node with the same count
+                if (nextLeaf < leafCount && (nextNode == node
+                        || leaves[nextLeaf] >>> valueBits <= weight[nextNode])) {
+                    id = ~(int) (leaves[nextLeaf] & valueMask);
+                    sum += leaves[nextLeaf] >>> valueBits;
+                    nextLeaf++;
+                } else {
+                    id = nextNode;
+                    sum += weight[nextNode];
+                    nextNode++;
+                }
+                if (child == 0) {
+                    tree.left[node] = id;
+                } else {
+                    tree.right[node] = id;
+                }
+            }
+            weight[node] = sum;
+        }
+        tree.internalCount = leafCount - 1;
+        tree.root = leafCount == 1 ? ~(int) (leaves[0] & valueMask) : leafCount - 2;
+        return recorded(event, tree, "counts", total);
+    }
+
+    /**
+     * The limit on counts for fromCounts, which keeps a count and a value
+     * in one long and the sum of all the counts in a long.
+     * @param values the number of values counted
+     * @return MAX_COUNT for up to ALPH_SIZE + 1 values, less for more
+     */
+    public static long maxCount(int values) {
+        return 1L << (Long.SIZE - 1 - valueBits(values));
+    }
+
+    /**
+     * Number of low bits of a sort key that hold the value of a leaf.
+     * @param values the number of values counted
+     * @return VALUE_BITS, or enough bits for the largest value if that is more
+     */
+    private static int valueBits(int values) {
+        int largest = Math.max(values, 1) - 1;
+        return Math.max(VALUE_BITS, Integer.SIZE - Integer.numberOfLeadingZeros(largest));
+    }
+
+    /**
+     * Builds the tree of the canonical code with the given code lengths,
+     * see CanonicalCode.
+     * pre: lengths != null, lengths.length <= ALPH_SIZE + 1, the lengths
+     * form a complete prefix code, or a single value has length 1
+     * @param lengths the code length of each value, 0 if the value does not occur
+     * @return the tree whose paths are the canonical codes
+     */
+    public static HuffTree fromLengths(int[] lengths) {
+        TreeBuildEvent event = new TreeBuildEvent();
+        event.begin();
+        long[] codes = CanonicalCode.assign(lengths);
+        if (codes == null) {
+            throw new IllegalArgumentException("code lengths do not form a prefix code");
+        }
+        int leafCount = 0;
+        int onlyValue = -1;
+        for (int value = 0; value < lengths.length; value++) {
+            if (lengths[value] != 0) {
+                leafCount++;
+                onlyValue = value;
+            }
+        }
+        HuffTree tree = new HuffTree(Math.max(0, leafCount - 1));
+        if (leafCount == 1) {
+            tree.root = ~onlyValue;
+            return recorded(event, tree, "lengths", 0);
+        }
+        // node 0 is the root, so 0 is never a child and marks a missing one
+        tree.internalCount = 1;
+        for (int value = 0; value < lengths.length; value++) {
+            int node = 0;
+            for (int bit = lengths[value] - 1; bit >= 0; bit--) {
+                int[] side = (codes[value] >>> bit & 1) == 0 ? tree.left : tree.right;
+                if (bit == 0) {
+                    side[node] = ~value;
+                } else {
+                    if (side[node] == 0) {
+                        if (tree.internalCount == tree.left.length) {
+                            throw new IllegalArgumentException("code lengths are not a complete code");
+                        }
+                        side[node] = tree.internalCount++;
+                    }
+                    node = side[node];
+                }
+            }
+        }
+        if (tree.internalCount != leafCount - 1) {
+            throw new IllegalArgumentException("code lengths are not a complete code");
+        }
+        return recorded(event, tree, "lengths", 0);
+    }
+
+    /**
+     * Reads a tree written by <code>write</code>. As in the STORE_TREE
+     * header, the tree is read node by node and no more than
+     * <tt>treeBits</tt> nodes are read.
+     * @param in the stream positioned at the start of the tree
+     * @param treeBits the size of the tree given in the header
+     * @return the tree, or null if the stream does not hold a whole tree
+     * with values from 0 to PSEUDO_EOF
+     * @throws IOException if reading from the stream fails
+     */
+    public static HuffTree read(BitInputStream in, int treeBits) throws IOException {
+        TreeBuildEvent event = new TreeBuildEvent();
+        event.begin();
+        HuffTree tree = new HuffTree(ALPH_SIZE);
+        int[] nodesLeft = {treeBits};
+        tree.root = tree.readNode(in, nodesLeft, 0);
+        return tree.root == INVALID ? null : recorded(event, tree, "header", 0);
+    }
+
+    /**
+     * Reads the bits of a tree written by <code>write</code> without building
+     * it, following the same rules as <code>read</code>: no more than
+     * <tt>treeBits</tt> nodes and a leaf value in 9 bits after each 1 bit.
+     * Reading the returned bits with <code>read</code> gives the same tree
+     * reading the stream would have.
+     * @param in the stream positioned at the start of the tree
+     * @param treeBits the size of the tree given in the header
+     * @return the bits of the tree, padded with 0s to a whole byte, or null
+     * if the stream does not hold a whole tree of at most treeBits nodes
+     * @throws IOException if reading from the stream fails
+     */
+    static byte[] readBits(BitInputStream in, int treeBits) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitOutputStream out = new BitOutputStream(bytes);
+        // subtrees still to read, and internal nodes read so far
+        int pending = 1;
+        int internal = 0;
+        for (int nodes = 0; pending > 0; nodes++) {
+            if (nodes == treeBits) {
+                return null;
+            }
+            int bit = in.readBits(1);
+            if (bit == -1) {
+                return null;
+            }
+            out.writeBits(1, bit);
+            if (bit == 1) {
+                int value = in.readBits(BITS_PER_WORD + 1);
+                if (value == -1) {
+                    return null;
+                }
+                out.writeBits(BITS_PER_WORD + 1, value);
+                pending--;
+            } else if (++internal > ALPH_SIZE) {
+                return null;
+            } else {
+                pending++;
+            }
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Records the building of a tree with the flight recorder, if the
+     * TreeBuildEvent is enabled.
+     * @param event the event begun when building started
+     * @param tree the tree built
+     * @param source what the tree was built from
+     * @param inputSymbols the sum of the counts, or 0
+     * @return tree
+     */
+    private static HuffTree recorded(TreeBuildEvent event, HuffTree tree, String source,
+            long inputSymbols) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.symbols = tree.leafCount();
+            event.inputSymbols = inputSymbols;
+            event.commit();
+        }
+        return tree;
+    }
+
+    /**
+     * Reads one node and its subtrees.
+     * @param in the stream positioned at the node
+     * @param nodesLeft the number of nodes that may still be read
+     * @param depth the depth of the node
+     * @return the reference to the node, or INVALID
+     * @throws IOException if reading from the stream fails
+     */
+    private int readNode(BitInputStream in, int[] nodesLeft, int depth) throws IOException {
+        if (nodesLeft[0] <= 0) {
+            return INVALID;
+        }
+        nodesLeft[0]--;
+        int bit = in.readBits(1);
+        if (bit == 1) {
+            int value = in.readBits(BITS_PER_WORD + 1);
+            return value < 0 || value > PSEUDO_EOF ? INVALID : ~value;
+        }
+        if (bit == -1 || internalCount == left.length || depth == CanonicalCode.MAX_LENGTH) {
+            return INVALID;
+        }
+        int node = internalCount++;
+        left[node] = readNode(in, nodesLeft, depth + 1);
+        if (left[node] == INVALID) {
+            return INVALID;
+        }
+        right[node] = readNode(in, nodesLeft, depth + 1);
+        return right[node] == INVALID ? INVALID : node;
+    }
+
+    /**
+     * Writes the tree in pre-order: a 0 bit for an internal node, or a 1 bit
+     * and the value in BITS_PER_WORD + 1 bits for a leaf.
+     * @param out the stream to write the tree to
+     * @return the number of bits written
+     */
+    public int write(BitOutputStream out) {
+        return write(root, out);
+    }
+
+    /**
+     * Writes the subtree at <tt>node</tt> in pre-order.
+     * @param node the reference to the subtree
+     * @param out the stream to write the subtree to
+     * @return the number of bits written
+     */
+    private int write(int node, BitOutputStream out) {
+        if (node < 0) {
+            out.writeBits(1, 1);
+            out.writeBits(BITS_PER_WORD + 1, ~node);
+            return BITS_PER_WORD + 2;
+        }
+        out.writeBits(1, 0);
+        return 1 + write(left[node], out) + write(right[node], out);
+    }
+
+    /**
+     * Fills in the code of each leaf: the path to the leaf with a 0 bit for
+     * every left branch and a 1 bit for every right branch.
+     * @param codes the code of each value, in the rightmost <tt>lengths[value]</tt> bits
+     * @param lengths the code length of each value, left alone for values not in the tree
+     * @return the values in the order of their codes, left to right in the tree
+     */
+    public int[] codes(long[] codes, int[] lengths) {
+        int[] values = new int[internalCount + 1];
+        codes(root, 0, 0, codes, lengths, values, 0);
+        return values;
+    }
+
+    /**
+     * Fills in the codes of the leaves under <tt>node</tt>.
+     * @param node the reference to the subtree
+     * @param path the bits of the path to node
+     * @param depth the number of bits in the path
+     * @param codes the code of each value
+     * @param lengths the code length of each value
+     * @param values the values in the order of their codes
+     * @param count the number of values placed in values so far
+     * @return the number of values placed in values after this subtree
+     */
+    private int codes(int node, long path, int depth, long[] codes, int[] lengths,
+            int[] values, int count) {
+        if (node < 0) {
+            codes[~node] = path;
+            lengths[~node] = depth;
+            values[count] = ~node;
+            return count + 1;
+        }
+        if (depth == Long.SIZE) {
+            throw new IllegalStateException("Huffman code longer than " + Long.SIZE + " bits");
+        }
+        count = codes(left[node], path << 1, depth + 1, codes, lengths, values, count);
+        return codes(right[node], (path << 1) | 1, depth + 1, codes, lengths, values, count);
+    }
+
+    /**
+     * Determines if the whole tree is a single leaf.
+     * @return true if the root is a leaf
+     */
+    public boolean isLeaf() {
+        return root < 0;
+    }
+
+    /**
+     * The value of the root when the whole tree is a single leaf.
+     * pre: isLeaf()
+     * @return the value of the only leaf
+     */
+    public int rootValue() {
+        return ~root;
+    }
+
+    /**
+     * pre: none
+     * @return the number of leaves in the tree
+     */
+    public int leafCount() {
+        return internalCount + 1;
+    }
+
+    /**
+     * pre: none
+     * @return the number of leaves and internal nodes in the tree
+     */
+    public int nodeCount() {
+        return 2 * internalCount + 1;
+    }
+}
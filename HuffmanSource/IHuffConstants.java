@@ -60,4 +60,32 @@ public interface IHuffConstants {
      * besides Standard Count Format or Standard Tree Format.
      */      
     public static final int STORE_CUSTOM = MAGIC_NUMBER | 4;
+
+    /**
+     * A value in files compressed with a HuffProcessor indicating
+     * the data is split into fixed-size blocks that are each coded
+     * independently with their own canonical code. See BlockCompressor.
+     */
+    public static final int STORE_BLOCKS = MAGIC_NUMBER | 8;
+
+    /**
+     * A value in files compressed with a HuffProcessor indicating
+     * the code is a trained model kept in a ModelRegistry. Only the
+     * model's ID follows, in BITS_PER_INT bits.
+     */
+    public static final int STORE_MODEL = MAGIC_NUMBER | 16;
+
+    /**
+     * A value in files compressed with a HuffProcessor indicating
+     * the counts of Standard Count Format are stored for only the values
+     * that occur, each in as few bits as it needs. See CompactCounts.
+     */
+    public static final int STORE_COMPACT_COUNTS = MAGIC_NUMBER | 32;
+
+    /**
+     * A value in files compressed with a HuffProcessor indicating
+     * the data did not compress and follows unchanged, to the end of
+     * the file.
+     */
+    public static final int STORE_RAW = MAGIC_NUMBER | 64;
 }
@@ -0,0 +1,59 @@
+package HuffmanSource;
+
+/**
+ * Receives measurements from a processor as it compresses and uncompresses,
+ * see SimpleHuffProcessor.setMetricsListener. When no listener is set
+ * nothing is timed or counted. The STORE_BLOCKS format codes blocks on
+ * several threads at once and reports the phases of each block from the
+ * thread that did the work, so a listener must be thread safe.
+ * HuffMetrics is a listener that adds up everything it is told.
+ */
+public interface IHuffMetricsListener {
+
+    /**
+     * The steps of compressing and uncompressing that are timed.
+     */
+    public enum Phase {
+        /** Reading the input and counting each value. */
+        COUNT,
+        /** Building the code from the counts. */
+        BUILD_CODE,
+        /** Writing the magic number, format and the header describing the code. */
+        WRITE_HEADER,
+        /** Writing the code of every value. */
+        ENCODE,
+        /** Reading the header and building the decoding table. */
+        READ_HEADER,
+        /** Decoding values and writing them out. */
+        DECODE
+    }
+
+    /**
+     * Called when one phase of one file, or of one block in the
+     * STORE_BLOCKS format, is done.
+     * @param phase the phase that finished
+     * @param nanos how long it took
+     */
+    public void phaseFinished(Phase phase, long nanos);
+
+    /**
+     * Called when compress has written a whole file.
+     * @param bytesIn the number of bytes compressed
+     * @param bytesOut the number of bytes written
+     * @param symbols the number of codes written, PSEUDO_EOF included
+     * @param codeBits the number of bits taken up by codes
+     * @param headerBits every other bit written: magic number, format,
+     * code header and, for STORE_BLOCKS, block lengths, padding and the index
+     * @param entropyBits the entropy of the counts times the number of symbols,
+     * the fewest bits any code for these counts can take
+     */
+    public void compressed(long bytesIn, long bytesOut, long symbols, long codeBits,
+            long headerBits, double entropyBits);
+
+    /**
+     * Called when uncompress has read a whole file.
+     * @param bytesIn the number of compressed bytes read
+     * @param bytesOut the number of bytes written
+     */
+    public void uncompressed(long bytesIn, long bytesOut);
+}
@@ -22,6 +22,17 @@ public interface IHuffProcessor extends IHuffConstants {
      */
     public void setViewer(IHuffViewer viewer);
 
+    /**
+     * Report the phase durations, byte counts and code statistics of every
+     * later compress and uncompress to a listener, such as a HuffMetrics.
+     * Nothing is timed or counted while the listener is null, the default.
+     * The default implementation ignores the listener, for processors that
+     * report no metrics.
+     * @param listener the listener to tell, or null for none
+     */
+    public default void setMetricsListener(IHuffMetricsListener listener) {
+    }
+
     /**
      * Preprocess data so that compression is possible ---
      * count characters/create tree/store state so that
@@ -70,4 +81,50 @@ public interface IHuffProcessor extends IHuffConstants {
      */
     public int uncompress(InputStream in, OutputStream out) throws IOException;
 
+    /**
+     * Same as <code>preprocessCompress</code>, but the number of bits saved
+     * is returned as a long, so it stays exact for inputs of 256 MB and more.
+     * The default calls <code>preprocessCompress</code>, so it is only as
+     * exact as that is; an implementation that counts in 64 bits overrides it.
+     * @param in is the stream which could be subsequently compressed
+     * @param headerFormat a constant from IHuffProcessor that determines what kind of
+     * header to use
+     * @return number of bits saved by compression
+     * @throws IOException if an error occurs while reading from the input file.
+     */
+    public default long preprocessCompressLong(InputStream in, int headerFormat)
+            throws IOException {
+        return preprocessCompress(in, headerFormat);
+    }
+
+    /**
+     * Same as <code>compress</code>, but the number of bits written is
+     * returned as a long. The default calls <code>compress</code>.
+     * <br> pre: <code>preprocessCompress</code> or <code>preprocessCompressLong</code>
+     * must be called before this method
+     * @param in is the stream being compressed (NOT a BitInputStream)
+     * @param out is bound to a file/stream to which bits are written
+     * @param force if this is true create the output file even if it is larger than the input file.
+     * @return the number of bits written.
+     * @throws IOException if an error occurs while reading from the input file or
+     * writing to the output file.
+     */
+    public default long compressLong(InputStream in, OutputStream out, boolean force)
+            throws IOException {
+        return compress(in, out, force);
+    }
+
+    /**
+     * Same as <code>uncompress</code>, but the number of bits written is
+     * returned as a long. The default calls <code>uncompress</code>.
+     * @param in is the previously compressed data (not a BitInputStream)
+     * @param out is the uncompressed file/stream
+     * @return the number of bits written to the uncompressed file/stream
+     * @throws IOException if an error occurs while reading from the input file or
+     * writing to the output file.
+     */
+    public default long uncompressLong(InputStream in, OutputStream out) throws IOException {
+        return uncompress(in, out);
+    }
+
 }
@@ -0,0 +1,164 @@
+package HuffmanSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * An InputStream that reads a file through memory mapped windows, so the
+ * contents of the file are never copied into a heap array. A single
+ * MappedByteBuffer holds at most Integer.MAX_VALUE bytes, so the file is
+ * read through a series of windows of at most <tt>windowSize</tt> bytes.
+ * Each window is mapped when the stream reaches it and dropped when the
+ * stream moves on, so reading a file of any size uses the same heap.
+ */
+public class MappedInputStream extends InputStream {
+
+    /**
+     * The number of bytes in each mapped window unless set otherwise.
+     */
+    public static final int WINDOW_SIZE = 1 << 30;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+
+    // the current window, null if none is mapped at windowStart yet
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long markPosition;
+
+    /**
+     * Create a MappedInputStream that reads all of a file.
+     * @param file the file to read
+     * @throws IOException if the file can't be opened
+     */
+    public MappedInputStream(File file) throws IOException {
+        this(file, WINDOW_SIZE);
+    }
+
+    /**
+     * Create a MappedInputStream that maps <tt>windowSize</tt> bytes of the
+     * file at a time.
+     * pre: windowSize > 0
+     * @param file the file to read
+     * @param windowSize the largest number of bytes mapped at once
+     * @throws IOException if the file can't be opened
+     */
+    public MappedInputStream(File file, int windowSize) throws IOException {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("window size must be positive");
+        }
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Number of bytes in the file.
+     * @return the size of the file when the stream was opened
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Position of the next byte to be read.
+     * @return the number of bytes read or skipped so far
+     */
+    public long position() {
+        return window == null ? windowStart : windowStart + window.position();
+    }
+
+    public int read() throws IOException {
+        if (!fillWindow()) {
+            return -1;
+        }
+        return window.get() & 0xFF;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        if (!fillWindow()) {
+            return -1;
+        }
+        int count = Math.min(len, window.remaining());
+        window.get(b, off, count);
+        return count;
+    }
+
+    public long skip(long n) {
+        if (n <= 0) {
+            return 0;
+        }
+        long skipped = Math.min(n, size - position());
+        seek(position() + skipped);
+        return skipped;
+    }
+
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, size - position());
+    }
+
+    public boolean markSupported() {
+        return true;
+    }
+
+    public void mark(int readlimit) {
+        markPosition = position();
+    }
+
+    public void reset() {
+        seek(markPosition);
+    }
+
+    /**
+     * Closes the file. A mapped window is released when it is garbage
+     * collected.
+     * @throws IOException if closing the file fails
+     */
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    /**
+     * Moves to <tt>position</tt>, keeping the current window if it holds that byte.
+     * @param position the position of the next byte to read
+     */
+    private void seek(long position) {
+        if (window != null && position >= windowStart
+                && position - windowStart <= window.limit()) {
+            window.position((int) (position - windowStart));
+        } else {
+            window = null;
+            windowStart = position;
+        }
+    }
+
+    /**
+     * Maps the window that holds the next byte if the current one is used up.
+     * @return true if there is a byte to read, false at the end of the file
+     * @throws IOException if mapping the file fails
+     */
+    private boolean fillWindow() throws IOException {
+        if (window != null && window.hasRemaining()) {
+            return true;
+        }
+        long position = position();
+        if (position >= size) {
+            return false;
+        }
+        int length = (int) Math.min(windowSize, size - position);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        windowStart = position;
+        return true;
+    }
+}
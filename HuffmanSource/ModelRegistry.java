@@ -0,0 +1,234 @@
+package HuffmanSource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A set of frequency models trained offline from sample files, each under
+ * an ID. Files compressed with a model in the STORE_MODEL format hold only
+ * its ID as their header, so small inputs whose own counts would cost more
+ * than they save still compress, and compressing skips building a code.
+ * The decompressor needs a registry with the same model under the same ID.
+ * <P>
+ * A trained model counts every byte value at least once, so it has a code
+ * for any input. A registry is saved as a file of the counts of each model;
+ * the codes are rebuilt the same way when it is read back. Running this
+ * class trains a model into a registry file:
+ * <pre>
+ * java HuffmanSource.ModelRegistry registryFile id sample...
+ * </pre>
+ * The registry is thread safe.
+ */
+public class ModelRegistry implements IHuffConstants {
+
+    private final ConcurrentMap<Integer, HuffModel> models = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a model built from byte counts, replacing any with the same ID.
+     * pre: id >= 0, counts.length == ALPH_SIZE, 0 <= every count < HuffTree.MAX_COUNT
+     * @param id the ID of the model
+     * @param counts the count of each byte value
+     * @return the model
+     */
+    public HuffModel add(int id, long[] counts) {
+        if (id < 0) {
+            throw new IllegalArgumentException("a model ID must not be negative");
+        }
+        HuffModel model = HuffModel.registered(id, counts);
+        models.put(id, model);
+        return model;
+    }
+
+    /**
+     * Trains a model on sample files and adds it, replacing any with the
+     * same ID. The files directly in a directory are read as samples too.
+     * Every byte value is counted once more than it occurs so the model can
+     * code any input.
+     * pre: id >= 0
+     * @param id the ID of the model
+     * @param samples the files and directories to train on
+     * @return the model
+     * @throws IOException if a sample can't be read
+     */
+    public HuffModel train(int id, File... samples) throws IOException {
+        long[] counts = new long[ALPH_SIZE];
+        Arrays.fill(counts, 1);
+        for (File sample : samples) {
+            File[] files = sample.isDirectory() ? sample.listFiles() : new File[] {sample};
+            if (files == null) {
+                throw new IOException("can't list " + sample);
+            }
+            for (File file : files) {
+                if (file.isFile()) {
+                    count(new FileInputStream(file), counts);
+                }
+            }
+        }
+        return add(id, counts);
+    }
+
+    /**
+     * Adds the bytes of a stream to counts and closes it.
+     * @param in the stream to count
+     * @param counts the count of each byte value so far
+     * @throws IOException if reading fails
+     */
+    private static void count(InputStream in, long[] counts) throws IOException {
+        try (InputStream input = in) {
+            byte[] buffer = new byte[1 << 13];
+            for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+                for (int i = 0; i < read; i++) {
+                    counts[buffer[i] & 0xFF]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param id the ID of a model
+     * @return the model with the ID, or null if there is none
+     */
+    public HuffModel get(int id) {
+        return models.get(id);
+    }
+
+    /**
+     * @return the IDs of the models, in increasing order
+     */
+    public int[] ids() {
+        Integer[] keys = models.keySet().toArray(new Integer[0]);
+        int[] ids = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            ids[i] = keys[i];
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * @return the number of models
+     */
+    public int size() {
+        return models.size();
+    }
+
+    /**
+     * Saves the registry to a file.
+     * @param file the file to write
+     * @throws IOException if writing fails
+     */
+    public void write(File file) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            write(out);
+        }
+    }
+
+    /**
+     * Writes the magic number, STORE_MODEL, the number of models and then
+     * the ID and the ALPH_SIZE byte counts of each model. The stream is
+     * flushed but not closed.
+     * @param out the stream to write to
+     * @throws IOException if writing fails
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        int[] ids = ids();
+        data.writeInt(MAGIC_NUMBER);
+        data.writeInt(STORE_MODEL);
+        data.writeInt(ids.length);
+        for (int id : ids) {
+            long[] counts = models.get(id).counts();
+            data.writeInt(id);
+            for (int i = 0; i < ALPH_SIZE; i++) {
+                data.writeLong(counts[i]);
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a registry saved by write.
+     * @param file the file to read
+     * @return the registry
+     * @throws IOException if reading fails or the file is not a registry
+     */
+    public static ModelRegistry read(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Reads a registry saved by write. The stream is not closed.
+     * @param in the stream to read from
+     * @return the registry
+     * @throws IOException if reading fails or the stream does not hold a registry
+     */
+    public static ModelRegistry read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC_NUMBER || data.readInt() != STORE_MODEL) {
+            throw new IOException("not a model registry");
+        }
+        int size = data.readInt();
+        if (size < 0) {
+            throw new IOException("bad model registry size " + size);
+        }
+        ModelRegistry registry = new ModelRegistry();
+        try {
+            for (int m = 0; m < size; m++) {
+                int id = data.readInt();
+                long[] counts = new long[ALPH_SIZE];
+                for (int i = 0; i < ALPH_SIZE; i++) {
+                    counts[i] = data.readLong();
+                }
+                registry.add(id, counts);
+            }
+        } catch (EOFException e) {
+            throw new IOException("model registry cut short", e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("bad model in registry: " + e.getMessage(), e);
+        }
+        return registry;
+    }
+
+    /**
+     * Trains a model into a registry file, creating the file if needed.
+     * @param args the registry file, the model ID and the sample files
+     * and directories
+     * @throws IOException if a file can't be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("usage: java HuffmanSource.ModelRegistry registryFile id sample...");
+            System.exit(2);
+        }
+        File file = new File(args[0]);
+        ModelRegistry registry = file.exists() ? read(file) : new ModelRegistry();
+        File[] samples = new File[args.length - 2];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = new File(args[i + 2]);
+        }
+        HuffModel model = registry.train(Integer.parseInt(args[1]), samples);
+        registry.write(file);
+        long symbols = 0;
+        for (long count : model.counts()) {
+            symbols += count;
+        }
+        System.out.printf("model %d: %d bytes counted, %.3f bits per byte, %d models in %s%n",
+                model.id(), symbols - ALPH_SIZE - 1,
+                (double) (model.compressedBits() - model.headerBits()) / symbols,
+                registry.size(), file);
+    }
+}
@@ -0,0 +1,129 @@
+package HuffmanSource;
+
+import java.util.Arrays;
+
+/**
+ * Optimal code lengths that are no longer than a given limit, found with
+ * the package-merge algorithm. Each of <tt>maxLength</tt> lists holds the
+ * values sorted by count merged with packages, each package being a pair
+ * of neighbouring items of the list below. The code length of a value is
+ * the number of lists in which it is used by the cheapest 2n - 2 items of
+ * the top list. Only whether each item is a value or a package is kept,
+ * since the values used in a list are always the ones with the smallest
+ * counts.
+ */
+public class PackageMerge {
+
+    // Number of low bits of a sort key that hold the value.
+    private static final int VALUE_BITS = IHuffConstants.BITS_PER_WORD + 1;
+    private static final long VALUE_MASK = (1 << VALUE_BITS) - 1;
+
+    /**
+     * Finds the code lengths that give the fewest bits for the given counts
+     * with no code longer than <tt>maxLength</tt>. A single value gets a
+     * length of 1.
+     * pre: freq != null, freq.length <= ALPH_SIZE + 1, no count is negative,
+     * at least one count is positive, 2 to the power maxLength is at least
+     * the number of positive counts, maxLength <= CanonicalCode.MAX_LENGTH
+     * @param freq the count of each value, 0 for values that do not occur
+     * @param maxLength the longest code length allowed
+     * @return the code length of each value, 0 for values that do not occur
+     */
+    public static int[] lengths(int[] freq, int maxLength) {
+        return lengths(Arrays.stream(freq).asLongStream().toArray(), maxLength);
+    }
+
+    /**
+     * Finds the best code lengths within <tt>maxLength</tt> for 64-bit counts.
+     * pre: as for <code>lengths(int[], int)</code>, and every count is less
+     * than HuffTree.MAX_COUNT
+     * @param freq the count of each value, 0 for values that do not occur
+     * @param maxLength the longest code length allowed
+     * @return the code length of each value, 0 for values that do not occur
+     */
+    public static int[] lengths(long[] freq, int maxLength) {
+        long[] leaves = sortedLeaves(freq);
+        int n = leaves.length;
+        if (n == 0) {
+            throw new IllegalArgumentException("at least one count must be positive");
+        }
+        if (maxLength < 1 || maxLength > CanonicalCode.MAX_LENGTH || (1L << maxLength) < n) {
+            throw new IllegalArgumentException("no prefix code for " + n
+                    + " values fits in " + maxLength + " bits");
+        }
+        int[] lengths = new int[freq.length];
+        if (n == 1) {
+            lengths[(int) (leaves[0] & VALUE_MASK)] = 1;
+            return lengths;
+        }
+        // isLeaf[level][i] tells if item i of the list at level is a value
+        boolean[][] isLeaf = new boolean[maxLength][];
+        long[] list = new long[n];
+        for (int i = 0; i < n; i++) {
+            list[i] = leaves[i] >>> VALUE_BITS;
+        }
+        isLeaf[maxLength - 1] = new boolean[n];
+        Arrays.fill(isLeaf[maxLength - 1], true);
+        for (int level = maxLength - 2; level >= 0; level--) {
+            int packages = list.length / 2;
+            long[] merged = new long[n + packages];
+            boolean[] leafFlags = new boolean[n + packages];
+            int leaf = 0;
+            int pack = 0;
+            for (int i = 0; i < merged.length; i++) {
+                long packWeight = pack < packages ? list[2 * pack] + list[2 * pack + 1] : 0;
+                if (pack == packages || (leaf < n && leaves[leaf] >>> VALUE_BITS <= packWeight)) {
+                    merged[i] = leaves[leaf++] >>> VALUE_BITS;
+                    leafFlags[i] = true;
+                } else {
+                    merged[i] = packWeight;
+                    pack++;
+                }
+            }
+            list = merged;
+            isLeaf[level] = leafFlags;
+        }
+        // walk down from the top list, each package used uses two items below it
+        int used = 2 * n - 2;
+        for (int level = 0; level < maxLength && used > 0; level++) {
+            int leavesUsed = 0;
+            for (int i = 0; i < used; i++) {
+                if (isLeaf[level][i]) {
+                    leavesUsed++;
+                }
+            }
+            for (int i = 0; i < leavesUsed; i++) {
+                lengths[(int) (leaves[i] & VALUE_MASK)]++;
+            }
+            used = 2 * (used - leavesUsed);
+        }
+        return lengths;
+    }
+
+    /**
+     * The values that occur sorted by count, then by value.
+     * @param freq the count of each value
+     * @return the count of each value that occurs in the upper bits and
+     * the value in the low VALUE_BITS bits, in increasing order
+     */
+    private static long[] sortedLeaves(long[] freq) {
+        int count = 0;
+        for (long f : freq) {
+            if (f < 0 || f >= HuffTree.MAX_COUNT) {
+                throw new IllegalArgumentException("counts must be from 0 to "
+                        + (HuffTree.MAX_COUNT - 1));
+            }
+            if (f != 0) {
+                count++;
+            }
+        }
+        long[] leaves = new long[count];
+        for (int value = 0, i = 0; value < freq.length; value++) {
+            if (freq[value] != 0) {
+                leaves[i++] = (freq[value] << VALUE_BITS) | value;
+            }
+        }
+        Arrays.sort(leaves);
+        return leaves;
+    }
+}
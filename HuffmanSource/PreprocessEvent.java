@@ -0,0 +1,35 @@
+package HuffmanSource;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for one preCompress: counting the input and
+ * building its code. Recorded when enabled, for example by the huffman.jfc
+ * settings at the top of the repository.
+ */
+@Name("huffman.Preprocess")
+@Label("Huffman Preprocess")
+@Category("Huffman")
+@Description("Counting an input and building its code")
+class PreprocessEvent extends jdk.jfr.Event {
+
+    @Label("Header Format")
+    @Description("The header format constant, such as STORE_CUSTOM")
+    int headerFormat;
+
+    @Label("Input Size")
+    @DataAmount
+    long inputSize;
+
+    @Label("Symbols")
+    @Description("Values counted, PSEUDO_EOF included once for each code")
+    long symbols;
+
+    @Label("Bits Saved")
+    @Description("Bits the compressed file will save, negative if it will be larger")
+    long bitsSaved;
+}
@@ -0,0 +1,136 @@
+package HuffmanSource;
+
+import java.io.IOException;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Which of the ALPH_SIZE values a header describes, stored the same way by
+ * the STORE_CUSTOM and STORE_COMPACT_COUNTS headers. A 1 bit layout flag
+ * comes first. With a flag of 0 a 1 bit follows for each value that is
+ * present and a 0 bit for each value that is not. With a flag of 1 the
+ * number of values present follows in BITS_PER_WORD + 1 bits, then each of
+ * those values in BITS_PER_WORD bits. The writer picks whichever layout is
+ * smaller. A header may store a field for each present value right after
+ * its bit or its value.
+ */
+final class PresentValues implements IHuffConstants {
+
+    /**
+     * Reads the field stored after a present value.
+     */
+    interface FieldReader {
+        /**
+         * @param value the present value
+         * @return false if the stream ends before the field does
+         * @throws IOException if reading from the stream fails
+         */
+        boolean read(int value) throws IOException;
+    }
+
+    private PresentValues() {
+    }
+
+    /**
+     * Number of bits the flag and the smaller layout take, not counting
+     * the fields of the values.
+     * @param count the number of values present
+     * @return the number of bits write writes
+     */
+    static int bits(int count) {
+        return 1 + (useList(count) ? listBits(count) : ALPH_SIZE);
+    }
+
+    /**
+     * Writes which values are present.
+     * @param present tells whether a value from 0 to ALPH_SIZE - 1 is present
+     * @param out the stream to write to
+     * @param field writes the field of a present value, or null if there is none
+     * @return the number of bits written, not counting the fields
+     */
+    static int write(IntPredicate present, BitOutputStream out, IntConsumer field) {
+        int count = 0;
+        for (int value = 0; value < ALPH_SIZE; value++) {
+            if (present.test(value)) {
+                count++;
+            }
+        }
+        boolean list = useList(count);
+        out.writeBits(1, list ? 1 : 0);
+        if (list) {
+            out.writeBits(BITS_PER_WORD + 1, count);
+        }
+        for (int value = 0; value < ALPH_SIZE; value++) {
+            boolean here = present.test(value);
+            if (list && here) {
+                out.writeBits(BITS_PER_WORD, value);
+            } else if (!list) {
+                out.writeBits(1, here ? 1 : 0);
+            }
+            if (here && field != null) {
+                field.accept(value);
+            }
+        }
+        return bits(count);
+    }
+
+    /**
+     * Reads which values are present, as written by write.
+     * @param in the stream positioned at the layout flag
+     * @param field reads the field of a present value, or null if there is none
+     * @return whether each value from 0 to ALPH_SIZE - 1 is present, or
+     * null if the stream ends first or lists more than ALPH_SIZE values
+     * @throws IOException if reading from the stream fails
+     */
+    static boolean[] read(BitInputStream in, FieldReader field) throws IOException {
+        int layout = in.readBits(1);
+        if (layout == -1) {
+            return null;
+        }
+        boolean[] present = new boolean[ALPH_SIZE];
+        if (layout == 0) {
+            for (int value = 0; value < ALPH_SIZE; value++) {
+                int bit = in.readBits(1);
+                if (bit == -1) {
+                    return null;
+                }
+                present[value] = bit == 1;
+                if (present[value] && field != null && !field.read(value)) {
+                    return null;
+                }
+            }
+        } else {
+            int count = in.readBits(BITS_PER_WORD + 1);
+            if (count == -1 || count > ALPH_SIZE) {
+                return null;
+            }
+            for (int i = 0; i < count; i++) {
+                int value = in.readBits(BITS_PER_WORD);
+                if (value == -1) {
+                    return null;
+                }
+                present[value] = true;
+                if (field != null && !field.read(value)) {
+                    return null;
+                }
+            }
+        }
+        return present;
+    }
+
+    /**
+     * @param count the number of values present
+     * @return true if listing the values is smaller than the bitmap
+     */
+    private static boolean useList(int count) {
+        return listBits(count) < ALPH_SIZE;
+    }
+
+    /**
+     * @param count the number of values present
+     * @return the number of bits the count and the listed values take
+     */
+    private static int listBits(int count) {
+        return BITS_PER_WORD + 1 + count * BITS_PER_WORD;
+    }
+}
@@ -20,14 +20,32 @@ package HuffmanSource;
  *  Section number: 50760
  */
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 public class SimpleHuffProcessor implements IHuffProcessor {
 
     private Compressor compress;
     private IHuffViewer myViewer;
+    private int blockSize = BlockCompressor.DEFAULT_BLOCK_SIZE;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    private int maxCodeLength = CanonicalCode.MAX_LENGTH;
+    private int retainLimit = Compressor.DEFAULT_RETAIN_LIMIT;
+    private IHuffMetricsListener metrics;
+    private DecodeTableCache tableCache = SHARED_TABLES;
+    private HuffModel model;
+    private ModelRegistry models;
+    private boolean storeRaw;
+
+    // The decode table cache every processor uses unless set otherwise.
+    private static final DecodeTableCache SHARED_TABLES = new DecodeTableCache();
 
     /**
      * Preprocess data so that compression is possible ---
@@ -43,11 +61,25 @@ public class SimpleHuffProcessor implements IHuffProcessor {
      * bits saved, the number of bits written includes
      * ALL bits that will be written including the
      * magic number, the header format number, the header to
-     * reproduce the tree, AND the actual data.
+     * reproduce the tree, AND the actual data. Inputs over 256 MB can save
+     * more bits than an int holds; see preprocessCompressLong.
      * @throws IOException if an error occurs while reading from the input file.
      */
     public int preprocessCompress(InputStream in, int headerFormat) throws IOException {
-        compress = new Compressor();
+        return saturate(preprocessCompressLong(in, headerFormat));
+    }
+
+    /**
+     * Same as preprocessCompress, with the bits saved counted in 64 bits,
+     * so the result is exact for inputs of any size.
+     */
+    @Override
+    public long preprocessCompressLong(InputStream in, int headerFormat) throws IOException {
+        compress = new Compressor(blockSize, threadCount, maxCodeLength);
+        compress.setRetainLimit(retainLimit);
+        compress.setMetricsListener(metrics);
+        compress.setModel(model);
+        compress.setStoreRaw(storeRaw);
         return compress.preCompress(in, headerFormat);
     }
 
@@ -61,33 +93,71 @@ public class SimpleHuffProcessor implements IHuffProcessor {
      * for the compressed file (not a BitOutputStream)
      * @param force if this is true create the output file even if it is larger than the input file.
      * If this is false do not create the output file if it is larger than the input file.
-     * @return the number of bits written.
+     * @return the number of bits written, Integer.MAX_VALUE if that is more
+     * than an int holds; see compressLong.
      * @throws IOException if an error occurs while reading from the input file or
      * writing to the output file.
      */
     public int compress(InputStream in, OutputStream out, boolean force) throws IOException {
+        return saturate(compressLong(in, out, force));
+    }
+
+    /**
+     * Same as compress, with the bits written counted in 64 bits.
+     */
+    @Override
+    public long compressLong(InputStream in, OutputStream out, boolean force) throws IOException {
         if (compress == null) {
             throw new IllegalStateException("preprocessCompress has not been called");
         }
-        int bits = compress.compress(in, out, force);
+        long bits = compress.compress(in, out, force);
         if (bits < 0) {
             return -1;
         }
         return bits;
     }
 
+    /**
+     * Compresses a stream that can only be read once, such as a pipe or a
+     * socket, in the STORE_BLOCKS format. preprocessCompress is not needed:
+     * each block of the size set by setBlockSize is coded and written as
+     * soon as it is read, so an input of any length is compressed in the
+     * same memory. The result has no block index, so it is always
+     * uncompressed as a stream, one block at a time.
+     * @param in is the stream being compressed (NOT a BitInputStream)
+     * @param out is bound to a file/stream to which bits are written
+     * for the compressed file (not a BitOutputStream)
+     * @return the number of bits written.
+     * @throws IOException if an error occurs while reading from the input or
+     * writing to the output.
+     */
+    public long compressStream(InputStream in, OutputStream out) throws IOException {
+        BlockCompressor blocks = new BlockCompressor(blockSize, threadCount, maxCodeLength);
+        blocks.setMetricsListener(metrics);
+        blocks.setStoreRaw(storeRaw);
+        return blocks.compressStream(in, out);
+    }
+
     /**
      * Uncompress a previously compressed stream in, writing the
      * uncompressed bits/data to out.
      * @param in is the previously compressed data (not a BitInputStream)
      * @param out is the uncompressed file/stream
-     * @return the number of bits written to the uncompressed file/stream
+     * @return the number of bits written to the uncompressed file/stream,
+     * Integer.MAX_VALUE if that is more than an int holds; see uncompressLong.
      * @throws IOException if an error occurs while reading from the input file or
      * writing to the output file.
      */
     public int uncompress(InputStream in, OutputStream out) throws IOException {
-        Decompressor decompress = new Decompressor();
-        int output = decompress.decompress(in, out);
+        return saturate(uncompressLong(in, out));
+    }
+
+    /**
+     * Same as uncompress, with the bits written counted in 64 bits.
+     */
+    @Override
+    public long uncompressLong(InputStream in, OutputStream out) throws IOException {
+        long output = decompressor().decompress(in, out);
         if (output == -1) {
             return -1;
         } else if (output == Decompressor.NO_PSEUDO_ERROR_CODE) {
@@ -96,7 +166,281 @@ public class SimpleHuffProcessor implements IHuffProcessor {
         return output;
     }
 
+    /**
+     * Uncompress a previously compressed file, writing the uncompressed
+     * data to another file. A STORE_BLOCKS file with a block index is
+     * decoded on as many threads as set by setThreadCount, with each block
+     * written straight to its place in the output file. The data of a
+     * STORE_RAW file is transferred from one file to the other as it is.
+     * Any other file is uncompressed as a stream.
+     * @param in is the previously compressed file
+     * @param out is the file to write the uncompressed data to
+     * @return the number of bits written to the uncompressed file
+     * @throws IOException if an error occurs while reading from the input file or
+     * writing to the output file.
+     */
+    public long uncompress(File in, File out) throws IOException {
+        long output;
+        try (FileChannel input = FileChannel.open(in.toPath(), StandardOpenOption.READ)) {
+            boolean raw = Decompressor.isRaw(input);
+            if (!raw && !BlockDecompressor.hasIndex(input)) {
+                try (InputStream fin = new FileInputStream(in);
+                        OutputStream fout = new FileOutputStream(out)) {
+                    return uncompressLong(fin, fout);
+                }
+            }
+            try (FileChannel result = FileChannel.open(out.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                if (raw) {
+                    output = decompressor().decompressRaw(input, result, 0, Long.MAX_VALUE);
+                } else {
+                    output = blockDecompressor().decompress(input, result, threadCount);
+                }
+            }
+        }
+        if (output == Decompressor.NO_PSEUDO_ERROR_CODE) {
+            myViewer.showError("java.io.IOException: Error reading compressed file.");
+        }
+        return output;
+    }
+
+    /**
+     * Uncompress part of a previously compressed file, writing the bytes
+     * from <tt>offset</tt> to <tt>offset + length</tt> of the uncompressed data
+     * to out. For a STORE_BLOCKS file with a block index only the blocks that
+     * hold those bytes are decoded, and for a STORE_RAW file only the
+     * requested bytes are read. Any other file is decoded from the start
+     * and the bytes outside the range are dropped. A range that runs past the
+     * end of the data stops there.
+     * pre: offset >= 0, length >= 0
+     * @param in is the previously compressed file
+     * @param out is the stream to write the requested bytes to, not closed
+     * @param offset the position of the first requested byte in the uncompressed data
+     * @param length the number of bytes requested
+     * @return the number of bits written to out
+     * @throws IOException if an error occurs while reading from the input file or
+     * writing to the output stream.
+     */
+    public long uncompress(File in, OutputStream out, long offset, long length) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("offset and length must not be negative");
+        }
+        long output;
+        try (FileChannel input = FileChannel.open(in.toPath(), StandardOpenOption.READ)) {
+            if (Decompressor.isRaw(input)) {
+                output = decompressor().decompressRaw(input, Channels.newChannel(out),
+                        offset, length);
+            } else if (BlockDecompressor.hasIndex(input)) {
+                output = blockDecompressor().decompress(input, out, offset, length);
+            } else {
+                RangeOutputStream range = new RangeOutputStream(out, offset, length);
+                try (InputStream fin = new FileInputStream(in)) {
+                    output = decompressor().decompress(fin, range);
+                }
+                if (output >= 0) {
+                    output = range.bitsWritten();
+                }
+            }
+        }
+        if (output == Decompressor.NO_PSEUDO_ERROR_CODE) {
+            myViewer.showError("java.io.IOException: Error reading compressed file.");
+        }
+        return output;
+    }
+
+    /**
+     * Fits a bit count in an int for the methods of IHuffProcessor that
+     * return one.
+     * @param bits the number of bits
+     * @return bits, or the nearest int if bits is out of the range of an int
+     */
+    private static int saturate(long bits) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, bits));
+    }
+
+    // A Decompressor that reports to the metrics listener.
+    private Decompressor decompressor() {
+        Decompressor decompress = new Decompressor();
+        decompress.setMetricsListener(metrics);
+        decompress.setTableCache(tableCache);
+        decompress.setModelRegistry(models);
+        return decompress;
+    }
+
+    // A BlockDecompressor that reports to the metrics listener.
+    private BlockDecompressor blockDecompressor() {
+        BlockDecompressor decompress = new BlockDecompressor();
+        decompress.setMetricsListener(metrics);
+        return decompress;
+    }
+
     public void setViewer(IHuffViewer viewer) {
         myViewer = viewer;
     }
+
+    /**
+     * Report every later compress and uncompress to a listener. The
+     * listener must be thread safe, since the blocks of the STORE_BLOCKS
+     * format are reported from the threads that code them. Takes effect
+     * at the next call to preprocessCompress or uncompress.
+     * @param listener the listener to tell, or null for none
+     */
+    public void setMetricsListener(IHuffMetricsListener listener) {
+        metrics = listener;
+    }
+
+    /**
+     * Set the cache of decoding tables uncompress looks headers up in.
+     * Every processor shares one cache of DecodeTableCache.DEFAULT_CAPACITY
+     * tables unless set otherwise, so files with a header seen before,
+     * by any processor, skip rebuilding the tree. Set a cache of your own
+     * to choose its size or read its counters.
+     * @param cache the cache to use, or null to always build the table
+     */
+    public void setTableCache(DecodeTableCache cache) {
+        tableCache = cache;
+    }
+
+    /**
+     * Set whether compress stores input that does not compress unchanged
+     * rather than writing a coded file larger than the input. The file is
+     * then in the STORE_RAW format, at most 8 bytes larger than the input,
+     * and is copied instead of coded, from file to file without passing
+     * through this program. With STORE_BLOCKS each block that does not
+     * compress is stored unchanged instead, which costs only its length.
+     * preprocessCompress counts the bits of the stored file. Older
+     * decompressors can't read the stored files and blocks. Takes effect at
+     * the next call to preprocessCompress.
+     * @param storeRaw true to store input that does not compress unchanged
+     */
+    public void setStoreRaw(boolean storeRaw) {
+        this.storeRaw = storeRaw;
+    }
+
+    /**
+     * Set the trained model the STORE_MODEL format compresses with, usually
+     * one from a ModelRegistry. The header is just the model's ID, so small
+     * inputs compress and preprocessCompress only counts to check that the
+     * model has a code for every value. Takes effect at the next call to
+     * preprocessCompress.
+     * @param model a model with the STORE_MODEL format, or null for none
+     */
+    public void setModel(HuffModel model) {
+        if (model != null && model.headerFormat() != STORE_MODEL) {
+            throw new IllegalArgumentException("not a STORE_MODEL model");
+        }
+        this.model = model;
+    }
+
+    /**
+     * Set the registry uncompress resolves the model IDs of STORE_MODEL
+     * files against. It must hold the same models the files were
+     * compressed with.
+     * @param models the registry to use, or null to refuse STORE_MODEL files
+     */
+    public void setModelRegistry(ModelRegistry models) {
+        this.models = models;
+    }
+
+    /**
+     * Set the number of input bytes in each block of the STORE_BLOCKS format.
+     * Takes effect at the next call to preprocessCompress.
+     * pre: size > 0
+     * @param size number of input bytes in each block
+     */
+    public void setBlockSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("block size must be positive");
+        }
+        blockSize = size;
+    }
+
+    /**
+     * Set the number of threads that code blocks of the STORE_BLOCKS format
+     * at the same time. Takes effect at the next call to preprocessCompress
+     * or uncompress.
+     * pre: count > 0
+     * @param count number of threads to use
+     */
+    public void setThreadCount(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("thread count must be positive");
+        }
+        threadCount = count;
+    }
+
+    /**
+     * Set the longest code the compressor may use, so decoding never needs
+     * a deep lookup. Codes stay optimal for the limit, and preprocessCompress
+     * counts the bits of the limited code. Has no effect on STORE_COUNTS or
+     * STORE_COMPACT_COUNTS, whose decompressor always rebuilds the unlimited
+     * Huffman tree. Takes effect at the next call to preprocessCompress.
+     * pre: BITS_PER_WORD + 1 <= length <= CanonicalCode.MAX_LENGTH
+     * @param length the longest code length allowed
+     */
+    public void setMaxCodeLength(int length) {
+        if (length < BITS_PER_WORD + 1 || length > CanonicalCode.MAX_LENGTH) {
+            throw new IllegalArgumentException("max code length must be from "
+                    + (BITS_PER_WORD + 1) + " to " + CanonicalCode.MAX_LENGTH);
+        }
+        maxCodeLength = length;
+    }
+
+    /**
+     * Set the most input bytes preprocessCompress keeps in memory. When the
+     * whole input fits, compress encodes the kept bytes and closes its input
+     * stream without reading it, so the input is only read once.
+     * Takes effect at the next call to preprocessCompress.
+     * pre: limit >= 0
+     * @param limit the most bytes to keep, 0 to always read the input twice
+     */
+    public void setRetainLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("retain limit must not be negative");
+        }
+        retainLimit = limit;
+    }
+
+    /*
+     * Passes on only the bytes written to it that fall in a range of
+     * positions and leaves the stream it wraps open when closed.
+     */
+    private static class RangeOutputStream extends OutputStream {
+        private final OutputStream out;
+        private long position;
+        private final long start;
+        private final long end;
+
+        private RangeOutputStream(OutputStream out, long offset, long length) {
+            this.out = out;
+            start = offset;
+            end = offset + Math.min(length, Long.MAX_VALUE - offset);
+        }
+
+        public void write(int b) throws IOException {
+            if (position >= start && position < end) {
+                out.write(b);
+            }
+            position++;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            long from = Math.max(position, start);
+            long to = Math.min(position + len, end);
+            if (from < to) {
+                out.write(b, off + (int) (from - position), (int) (to - from));
+            }
+            position += len;
+        }
+
+        public void close() throws IOException {
+            out.flush();
+        }
+
+        // Number of bits passed on so far.
+        private long bitsWritten() {
+            long count = Math.max(0, Math.min(position, end) - start);
+            return count * IHuffConstants.BITS_PER_WORD;
+        }
+    }
 }
\ No newline at end of file
@@ -1,12 +1,9 @@
 package HuffmanSource;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
+import java.io.InputStream;
 import java.util.Scanner;
 
 /**
@@ -102,15 +99,21 @@ public class TextHuffViewer implements IHuffViewer {
             System.out.print("Current Header format for compressing: ");
             if (this.myHeaderFormat == IHuffConstants.STORE_COUNTS) {
                 System.out.println("Standard COUNT Format");
-            } else {
+            } else if (this.myHeaderFormat == IHuffConstants.STORE_COMPACT_COUNTS) {
+                System.out.println("Compact COUNT Format");
+            } else if (this.myHeaderFormat == IHuffConstants.STORE_TREE) {
                 System.out.println("Standard TREE Format");
+            } else if (this.myHeaderFormat == IHuffConstants.STORE_CUSTOM) {
+                System.out.println("Canonical CODE Format");
+            } else {
+                System.out.println("BLOCK Format");
             }
             System.out.println("Current force compression status: " + this.myForce);
             System.out.println();
             System.out.println("OPTIONS");
             System.out.println("1. File operations. ");
             System.out.println("2. Flip Force Compression status.");
-            System.out.println("3. Flip Header format.");
+            System.out.println("3. Change Header format.");
             System.out.println("4. Quit (or any value other than 1, 2, or 3)");
             System.out.println();
             choice = processChoice();
@@ -145,10 +148,18 @@ public class TextHuffViewer implements IHuffViewer {
             } else if (firstCharValue == MenuChoices.FLIP_COMPRESSION_STATUS.ordinal()) {
                 myForce = !myForce;
             } else {
-                // must be a 3, flip the header format
-                myHeaderFormat =
-                        (myHeaderFormat == IHuffConstants.STORE_COUNTS) ? IHuffConstants.STORE_TREE
-                                : IHuffConstants.STORE_COUNTS;
+                // must be a 3, move on to the next header format
+                if (myHeaderFormat == IHuffConstants.STORE_COUNTS) {
+                    myHeaderFormat = IHuffConstants.STORE_COMPACT_COUNTS;
+                } else if (myHeaderFormat == IHuffConstants.STORE_COMPACT_COUNTS) {
+                    myHeaderFormat = IHuffConstants.STORE_TREE;
+                } else if (myHeaderFormat == IHuffConstants.STORE_TREE) {
+                    myHeaderFormat = IHuffConstants.STORE_CUSTOM;
+                } else if (myHeaderFormat == IHuffConstants.STORE_CUSTOM) {
+                    myHeaderFormat = IHuffConstants.STORE_BLOCKS;
+                } else {
+                    myHeaderFormat = IHuffConstants.STORE_COUNTS;
+                }
 
             }
         }
@@ -189,9 +200,9 @@ public class TextHuffViewer implements IHuffViewer {
      */
     private void preprocess() {
         showMessage("Begining preprocessing of " + myInputFile + ".");
-        ByteArrayInputStream inputStream = getFastByteReader(myInputFile);
+        InputStream inputStream = getFastByteReader(myInputFile);
         try {
-            int saved = myModel.preprocessCompress(inputStream, myHeaderFormat);
+            long saved = myModel.preprocessCompressLong(inputStream, myHeaderFormat);
             showMessage("save(d): " + saved + " bits");
         } catch (IOException e) {
             showError("Error / Exception while reading file for preprocessing.");
@@ -209,7 +220,7 @@ public class TextHuffViewer implements IHuffViewer {
         } else {
             try {
                 FileOutputStream out = new FileOutputStream(new File(newName));
-                ByteArrayInputStream inputStream = getFastByteReader(myInputFile);
+                InputStream inputStream = getFastByteReader(myInputFile);
                 myModel.compress(inputStream, out, myForce);
             } catch (IOException e) {
                 showError("Problem while trying to compress file.");
@@ -281,8 +292,12 @@ public class TextHuffViewer implements IHuffViewer {
         }
         uncompressedName = setNewFileName("compressed", uncompressedName);
         try {
+            if (myModel instanceof SimpleHuffProcessor) {
+                ((SimpleHuffProcessor) myModel).uncompress(myInputFile, new File(uncompressedName));
+                return;
+            }
             FileOutputStream out = new FileOutputStream(new File(uncompressedName));
-            ByteArrayInputStream inputStream = getFastByteReader(myInputFile);
+            InputStream inputStream = getFastByteReader(myInputFile);
             myModel.uncompress(inputStream, out);
         } catch (IOException e) {
             showError("Problem while trying to uncompress file.");
@@ -298,18 +313,10 @@ public class TextHuffViewer implements IHuffViewer {
         myInputFile = new File(path);
     }
 
-    // Get a ByteArrayInputStream to read from the given file.
-    private ByteArrayInputStream getFastByteReader(File f) {
+    // Get an InputStream that reads the given file through memory mapped windows.
+    private InputStream getFastByteReader(File f) {
         try {
-            FileChannel channel = new FileInputStream(f).getChannel();
-            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
-            byte[] barray = new byte[buffer.limit()];
-            if (barray.length != channel.size()) {
-                showError(String.format("Reading %s error: lengths differ %d %ld\n", f.getName(),
-                        barray.length, channel.size()));
-            }
-            buffer.get(barray);
-            return new ByteArrayInputStream(barray);
+            return new MappedInputStream(f);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -0,0 +1,30 @@
+package HuffmanSource;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for building one HuffTree, from counts, from
+ * code lengths or from a STORE_TREE header. Every block of a STORE_BLOCKS
+ * file builds a tree, so these are many and short.
+ */
+@Name("huffman.TreeBuild")
+@Label("Huffman Tree Build")
+@Category("Huffman")
+@Description("Building a Huffman tree")
+class TreeBuildEvent extends jdk.jfr.Event {
+
+    @Label("Source")
+    @Description("What the tree was built from: counts, lengths or header")
+    String source;
+
+    @Label("Symbols")
+    @Description("Leaves of the tree, PSEUDO_EOF included")
+    int symbols;
+
+    @Label("Input Symbols")
+    @Description("The sum of the counts for a tree built from counts, otherwise 0")
+    long inputSymbols;
+}
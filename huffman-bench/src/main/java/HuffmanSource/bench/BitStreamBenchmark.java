@@ -0,0 +1,75 @@
+package HuffmanSource.bench;
+
+import HuffmanSource.BitInputStream;
+import HuffmanSource.BitOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times BitInputStream.readBits and BitOutputStream.writeBits on their own,
+ * reading or writing every file of a corpus <tt>width</tt> bits at a time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BitStreamBenchmark {
+
+    @Param({"calgary", "waterloo", "BooksAndHTML"})
+    public String corpus;
+
+    @Param({"1", "8", "13"})
+    public int width;
+
+    private byte[][] files;
+    private long size;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        files = Corpus.load(corpus);
+        size = Corpus.size(files);
+    }
+
+    @Benchmark
+    public long readBits(Throughput throughput) throws IOException {
+        long sum = 0;
+        for (byte[] file : files) {
+            BitInputStream in = new BitInputStream(new ByteArrayInputStream(file));
+            for (int value = in.readBits(width); value != -1; value = in.readBits(width)) {
+                sum += value;
+            }
+        }
+        throughput.add(size);
+        return sum;
+    }
+
+    @Benchmark
+    public void writeBits(Throughput throughput) {
+        int mask = (1 << width) - 1;
+        for (byte[] file : files) {
+            BitOutputStream out = new BitOutputStream(OutputStream.nullOutputStream());
+            // as many values as it takes to write the file's bits
+            for (int i = 0, values = (int) ((long) file.length * 8 / width); i < values; i++) {
+                out.writeBits(width, file[i % file.length] & mask);
+            }
+            out.close();
+        }
+        throughput.add(size);
+    }
+}
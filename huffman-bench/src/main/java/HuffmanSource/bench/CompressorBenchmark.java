@@ -0,0 +1,113 @@
+package HuffmanSource.bench;
+
+import HuffmanSource.BlockCompressor;
+import HuffmanSource.Compressor;
+import HuffmanSource.Decompressor;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times the three passes of Huffman coding on their own: counting and
+ * building the code with preCompress, encoding with compress, and decoding
+ * with decompress. Each operation runs the pass over every file of a
+ * corpus held in memory, so no time goes to the disk. Run with
+ * <tt>-prof gc</tt> for the bytes allocated per operation.
+ * <P>
+ * The Compressors code STORE_BLOCKS blocks on <tt>threads</tt> threads.
+ * The other formats and decompress run on one thread whatever it is set
+ * to, so time them with <tt>-p threads=1</tt>, and time how STORE_BLOCKS
+ * scales with <tt>-p format=STORE_BLOCKS</tt>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressorBenchmark {
+
+    @Param({"calgary", "waterloo", "BooksAndHTML"})
+    public String corpus;
+
+    @Param({"STORE_COUNTS", "STORE_COMPACT_COUNTS", "STORE_TREE", "STORE_CUSTOM", "STORE_BLOCKS"})
+    public String format;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int threads;
+
+    private byte[][] files;
+    private long size;
+    private int headerFormat;
+    // a Compressor for each file with preCompress already done
+    private Compressor[] prepared;
+    private byte[][] compressed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        files = Corpus.load(corpus);
+        size = Corpus.size(files);
+        headerFormat = Corpus.headerFormat(format);
+        prepared = new Compressor[files.length];
+        compressed = new byte[files.length][];
+        for (int i = 0; i < files.length; i++) {
+            // compress then reads its stream every time, as it does for large inputs
+            prepared[i] = compressor();
+            prepared[i].setRetainLimit(0);
+            prepared[i].preCompress(new ByteArrayInputStream(files[i]), headerFormat);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            prepared[i].compress(new ByteArrayInputStream(files[i]), out, true);
+            compressed[i] = out.toByteArray();
+        }
+    }
+
+    @Benchmark
+    public long preCompress(Throughput throughput) throws IOException {
+        long saved = 0;
+        for (byte[] file : files) {
+            saved += compressor().preCompress(new ByteArrayInputStream(file), headerFormat);
+        }
+        throughput.add(size);
+        return saved;
+    }
+
+    @Benchmark
+    public long compress(Throughput throughput) throws IOException {
+        long written = 0;
+        for (int i = 0; i < files.length; i++) {
+            written += prepared[i].compress(new ByteArrayInputStream(files[i]),
+                    OutputStream.nullOutputStream(), true);
+        }
+        throughput.add(size);
+        return written;
+    }
+
+    @Benchmark
+    public long decompress(Throughput throughput) throws IOException {
+        long written = 0;
+        for (byte[] file : compressed) {
+            written += new Decompressor().decompress(new ByteArrayInputStream(file),
+                    OutputStream.nullOutputStream());
+        }
+        throughput.add(size);
+        return written;
+    }
+
+    private Compressor compressor() {
+        return new Compressor(BlockCompressor.DEFAULT_BLOCK_SIZE, threads);
+    }
+}
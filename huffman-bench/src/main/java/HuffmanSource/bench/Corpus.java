@@ -0,0 +1,82 @@
+package HuffmanSource.bench;
+
+import HuffmanSource.IHuffConstants;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The bundled test corpora and header formats the benchmarks run over.
+ * The corpus directories are found under the directory named by the
+ * <tt>huffman.corpora</tt> system property, the working directory if it is
+ * not set, so the benchmarks are normally run from the top of the repository.
+ */
+public class Corpus {
+
+    /**
+     * The system property that names the directory holding the corpora.
+     */
+    public static final String CORPORA_PROPERTY = "huffman.corpora";
+
+    /**
+     * Reads every file of a corpus into memory, in order of file name.
+     * Compressed .hf files are skipped.
+     * @param name the name of the corpus directory, such as calgary
+     * @return the contents of each file
+     * @throws IOException if the corpus can't be found or read
+     */
+    public static byte[][] load(String name) throws IOException {
+        File dir = new File(System.getProperty(CORPORA_PROPERTY, "."), name);
+        File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IOException("no corpus at " + dir.getAbsolutePath()
+                    + ", run from the top of the repository or set -D" + CORPORA_PROPERTY);
+        }
+        Arrays.sort(files);
+        List<byte[]> contents = new ArrayList<>();
+        for (File file : files) {
+            if (file.isFile() && !file.getName().endsWith(".hf")) {
+                contents.add(Files.readAllBytes(file.toPath()));
+            }
+        }
+        return contents.toArray(new byte[0][]);
+    }
+
+    /**
+     * The total number of bytes in a corpus.
+     * @param files the contents of each file
+     * @return the sum of the lengths
+     */
+    public static long size(byte[][] files) {
+        long total = 0;
+        for (byte[] file : files) {
+            total += file.length;
+        }
+        return total;
+    }
+
+    /**
+     * The header format constant with the given name.
+     * @param name STORE_COUNTS, STORE_COMPACT_COUNTS, STORE_TREE, STORE_CUSTOM or STORE_BLOCKS
+     * @return the constant from IHuffConstants
+     */
+    public static int headerFormat(String name) {
+        switch (name) {
+            case "STORE_COUNTS":
+                return IHuffConstants.STORE_COUNTS;
+            case "STORE_COMPACT_COUNTS":
+                return IHuffConstants.STORE_COMPACT_COUNTS;
+            case "STORE_TREE":
+                return IHuffConstants.STORE_TREE;
+            case "STORE_CUSTOM":
+                return IHuffConstants.STORE_CUSTOM;
+            case "STORE_BLOCKS":
+                return IHuffConstants.STORE_BLOCKS;
+            default:
+                throw new IllegalArgumentException("unknown header format " + name);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package HuffmanSource.bench;
+
+import HuffmanSource.Compressor;
+import HuffmanSource.Decompressor;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times decoding a corpus held in memory with the lookup table Decompressor
+ * uses against walking a TreeNode tree one bit at a time, the way it
+ * decoded before. Only STORE_COUNTS and STORE_TREE are timed, the formats
+ * the tree walk reads. The megabytes counter gives the MB/s of each.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+
+    @Param({"calgary", "waterloo"})
+    public String corpus;
+
+    @Param({"STORE_COUNTS", "STORE_TREE"})
+    public String format;
+
+    private long size;
+    private byte[][] compressed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[][] files = Corpus.load(corpus);
+        size = Corpus.size(files);
+        int headerFormat = Corpus.headerFormat(format);
+        compressed = new byte[files.length][];
+        for (int i = 0; i < files.length; i++) {
+            Compressor compressor = new Compressor();
+            compressor.preCompress(new ByteArrayInputStream(files[i]), headerFormat);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            compressor.compress(new ByteArrayInputStream(files[i]), out, true);
+            compressed[i] = out.toByteArray();
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            TreeWalkDecoder.decompress(new ByteArrayInputStream(compressed[i]), decoded);
+            if (!Arrays.equals(files[i], decoded.toByteArray())) {
+                throw new IllegalStateException("the tree walk does not decode file " + i
+                        + " of " + corpus + " in " + format);
+            }
+        }
+    }
+
+    @Benchmark
+    public long table(Throughput throughput) throws IOException {
+        long written = 0;
+        for (byte[] file : compressed) {
+            written += new Decompressor().decompress(new ByteArrayInputStream(file),
+                    OutputStream.nullOutputStream());
+        }
+        throughput.add(size);
+        return written;
+    }
+
+    @Benchmark
+    public long treeWalk(Throughput throughput) throws IOException {
+        long written = 0;
+        for (byte[] file : compressed) {
+            written += TreeWalkDecoder.decompress(new ByteArrayInputStream(file),
+                    OutputStream.nullOutputStream());
+        }
+        throughput.add(size);
+        return written;
+    }
+}
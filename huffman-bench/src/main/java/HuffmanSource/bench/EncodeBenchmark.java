@@ -0,0 +1,94 @@
+package HuffmanSource.bench;
+
+import HuffmanSource.Compressor;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times encoding a corpus held in memory with the code arrays Compressor
+ * uses against looking up a String code per byte and writing it a bit at
+ * a time, the way it encoded before. Both are prepared in setup, so only
+ * compress is timed. Run with <tt>-prof gc</tt> and divide
+ * gc.alloc.rate.norm by the corpus size for the bytes allocated per
+ * megabyte.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodeBenchmark {
+
+    @Param({"calgary", "waterloo"})
+    public String corpus;
+
+    @Param({"STORE_COUNTS", "STORE_TREE"})
+    public String format;
+
+    private byte[][] files;
+    private long size;
+    private Compressor[] prepared;
+    private StringMapEncoder[] encoders;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        files = Corpus.load(corpus);
+        size = Corpus.size(files);
+        int headerFormat = Corpus.headerFormat(format);
+        prepared = new Compressor[files.length];
+        encoders = new StringMapEncoder[files.length];
+        for (int i = 0; i < files.length; i++) {
+            prepared[i] = new Compressor();
+            prepared[i].setRetainLimit(0);
+            prepared[i].preCompress(new ByteArrayInputStream(files[i]), headerFormat);
+            encoders[i] = new StringMapEncoder(new ByteArrayInputStream(files[i]), headerFormat);
+            ByteArrayOutputStream arrays = new ByteArrayOutputStream();
+            prepared[i].compress(new ByteArrayInputStream(files[i]), arrays, true);
+            ByteArrayOutputStream strings = new ByteArrayOutputStream();
+            encoders[i].compress(new ByteArrayInputStream(files[i]), strings);
+            if (!Arrays.equals(arrays.toByteArray(), strings.toByteArray())) {
+                throw new IllegalStateException("the string map encodes file " + i
+                        + " of " + corpus + " in " + format + " differently");
+            }
+        }
+    }
+
+    @Benchmark
+    public long arrays(Throughput throughput) throws IOException {
+        long written = 0;
+        for (int i = 0; i < files.length; i++) {
+            written += prepared[i].compress(new ByteArrayInputStream(files[i]),
+                    OutputStream.nullOutputStream(), true);
+        }
+        throughput.add(size);
+        return written;
+    }
+
+    @Benchmark
+    public long stringMap(Throughput throughput) throws IOException {
+        long written = 0;
+        for (int i = 0; i < files.length; i++) {
+            written += encoders[i].compress(new ByteArrayInputStream(files[i]),
+                    OutputStream.nullOutputStream());
+        }
+        throughput.add(size);
+        return written;
+    }
+}
@@ -0,0 +1,116 @@
+package HuffmanSource.bench;
+
+import HuffmanSource.BlockDecompressor;
+import HuffmanSource.IHuffConstants;
+import HuffmanSource.SimpleHuffProcessor;
+import HuffmanSource.TextHuffViewer;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times SimpleHuffProcessor.uncompress(File, File) on a STORE_BLOCKS file
+ * with a block index, which decodes the blocks on <tt>threads</tt> threads
+ * and writes each straight to its place in the output file. The files of
+ * a corpus are joined into one input and compressed in blocks of
+ * BLOCK_SIZE bytes, so even the smaller corpora have enough blocks to
+ * share between 16 threads. Both files are in the temporary directory and
+ * are deleted after the run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileUncompressBenchmark {
+
+    /**
+     * The number of input bytes in each block of the compressed file.
+     */
+    public static final int BLOCK_SIZE = 1 << 16;
+
+    @Param({"calgary", "waterloo", "BooksAndHTML"})
+    public String corpus;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int threads;
+
+    private long size;
+    private File compressed;
+    private File uncompressed;
+    private SimpleHuffProcessor processor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] input = join(Corpus.load(corpus));
+        size = input.length;
+        compressed = File.createTempFile("bench", ".hf");
+        uncompressed = File.createTempFile("bench", ".out");
+        processor = new SimpleHuffProcessor();
+        processor.setViewer(new TextHuffViewer());
+        processor.setBlockSize(BLOCK_SIZE);
+        processor.setThreadCount(threads);
+        processor.preprocessCompressLong(new ByteArrayInputStream(input),
+                IHuffConstants.STORE_BLOCKS);
+        try (OutputStream out = new FileOutputStream(compressed)) {
+            processor.compressLong(new ByteArrayInputStream(input), out, true);
+        }
+        try (FileChannel in = FileChannel.open(compressed.toPath(), StandardOpenOption.READ)) {
+            if (!BlockDecompressor.hasIndex(in)) {
+                throw new IllegalStateException(corpus + " was compressed without a block index");
+            }
+        }
+        processor.uncompress(compressed, uncompressed);
+        if (!Arrays.equals(input, Files.readAllBytes(uncompressed.toPath()))) {
+            throw new IllegalStateException(corpus + " does not uncompress to its input");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        compressed.delete();
+        uncompressed.delete();
+    }
+
+    @Benchmark
+    public long uncompress(Throughput throughput) throws IOException {
+        long written = processor.uncompress(compressed, uncompressed);
+        throughput.add(size);
+        return written;
+    }
+
+    /**
+     * @param files the contents of each file
+     * @return the files one after another
+     */
+    private static byte[] join(byte[][] files) {
+        byte[] joined = new byte[(int) Corpus.size(files)];
+        int position = 0;
+        for (byte[] file : files) {
+            System.arraycopy(file, 0, joined, position, file.length);
+            position += file.length;
+        }
+        return joined;
+    }
+}
@@ -0,0 +1,133 @@
+package HuffmanSource.bench;
+
+import HuffmanSource.ModelRegistry;
+import HuffmanSource.SimpleHuffProcessor;
+import HuffmanSource.TextHuffViewer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Checks that every compressed fixture under
+ * AdditionalTests/AdditionalTests/files_to_test still decodes to the
+ * original file it was made from. Each <tt>*_format</tt> directory holds
+ * files named <tt>original_suffix.hf</tt>, made from
+ * <tt>original_files/original.ext</tt>, and a directory with a
+ * <tt>models.bin</tt> registry decodes with it. Each fixture is decoded as
+ * a stream and from file to file, which takes the STORE_BLOCKS index and
+ * STORE_RAW paths. Run it from the top of the repository:
+ * <pre>
+ * java -cp huffman-bench/target/benchmarks.jar HuffmanSource.bench.FixtureCheck
+ * </pre>
+ */
+public class FixtureCheck {
+
+    /**
+     * The directory holding the fixtures unless another is given.
+     */
+    public static final String DEFAULT_DIRECTORY = "AdditionalTests/AdditionalTests/files_to_test";
+
+    // The registry file STORE_MODEL fixtures decode with.
+    private static final String REGISTRY = "models.bin";
+
+    public static void main(String[] args) throws IOException {
+        File root = new File(args.length > 0 ? args[0] : DEFAULT_DIRECTORY);
+        File[] originals = new File(root, "original_files").listFiles();
+        File[] dirs = root.listFiles((dir, name) -> name.endsWith("_format"));
+        if (originals == null || dirs == null) {
+            throw new IOException("no fixtures at " + root.getAbsolutePath()
+                    + ", run from the top of the repository or give the directory");
+        }
+        Arrays.sort(dirs);
+        int checked = 0;
+        int failures = 0;
+        File decoded = File.createTempFile("fixture", ".out");
+        try {
+            for (File dir : dirs) {
+                File registryFile = new File(dir, REGISTRY);
+                ModelRegistry registry = registryFile.isFile() ? ModelRegistry.read(registryFile) : null;
+                File[] fixtures = dir.listFiles((d, name) -> name.endsWith(".hf"));
+                Arrays.sort(fixtures);
+                for (File fixture : fixtures) {
+                    String problem = check(fixture, originals, registry, decoded);
+                    checked++;
+                    if (problem != null) {
+                        System.out.println("FAILED " + dir.getName() + "/" + fixture.getName()
+                                + ": " + problem);
+                        failures++;
+                    }
+                }
+            }
+        } finally {
+            decoded.delete();
+        }
+        System.out.println(failures == 0 ? checked + " fixtures decode"
+                : failures + " of " + checked + " fixtures failed");
+        if (failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Decodes one fixture both ways and compares it with its original.
+     * @param fixture the compressed file
+     * @param originals the files the fixtures were made from
+     * @param registry the models to decode with, or null for none
+     * @param decoded a scratch file to decode to
+     * @return what is wrong, or null if both decodings match the original
+     */
+    private static String check(File fixture, File[] originals, ModelRegistry registry,
+            File decoded) throws IOException {
+        File original = originalOf(fixture, originals);
+        if (original == null) {
+            return "no original file";
+        }
+        byte[] expected = Files.readAllBytes(original.toPath());
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (InputStream in = new FileInputStream(fixture)) {
+            processor(registry).uncompressLong(in, stream);
+        }
+        if (!Arrays.equals(expected, stream.toByteArray())) {
+            return "stream decoding differs from " + original.getName();
+        }
+        processor(registry).uncompress(fixture, decoded);
+        if (!Arrays.equals(expected, Files.readAllBytes(decoded.toPath()))) {
+            return "file decoding differs from " + original.getName();
+        }
+        return null;
+    }
+
+    /**
+     * @param fixture a file named original_suffix.hf
+     * @param originals the files the fixtures were made from
+     * @return the original whose name without its extension is the
+     * fixture's name without its suffix, or null if there is none
+     */
+    private static File originalOf(File fixture, File[] originals) {
+        String name = fixture.getName();
+        int end = name.lastIndexOf('_');
+        if (end < 0) {
+            return null;
+        }
+        String base = name.substring(0, end);
+        for (File original : originals) {
+            String other = original.getName();
+            int dot = other.lastIndexOf('.');
+            if ((dot < 0 ? other : other.substring(0, dot)).equals(base)) {
+                return original;
+            }
+        }
+        return null;
+    }
+
+    private static SimpleHuffProcessor processor(ModelRegistry registry) {
+        SimpleHuffProcessor processor = new SimpleHuffProcessor();
+        processor.setViewer(new TextHuffViewer());
+        processor.setModelRegistry(registry);
+        return processor;
+    }
+}
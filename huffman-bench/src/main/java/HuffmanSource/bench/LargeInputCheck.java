@@ -0,0 +1,213 @@
+package HuffmanSource.bench;
+
+import HuffmanSource.IHuffConstants;
+import HuffmanSource.SimpleHuffProcessor;
+import HuffmanSource.TextHuffViewer;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Checks that bit and byte counts stay exact past 32 bits. It writes an
+ * input in which one byte occurs more than 2^32 times, 5 GB unless set
+ * otherwise, then compresses and uncompresses it in the STORE_CUSTOM,
+ * STORE_TREE and STORE_BLOCKS formats:
+ * <ul>
+ * <li>the bits saved are the input bits minus the bits written,</li>
+ * <li>the bits written fill the compressed file,</li>
+ * <li>uncompressLong gives back every bit with the input's CRC,</li>
+ * <li>a byte range near the end of the STORE_BLOCKS file decodes
+ * through its index,</li>
+ * <li>STORE_COUNTS, whose counts are 32 bits, is refused.</li>
+ * </ul>
+ * The input and compressed files take about 6 GB of disk and a run takes
+ * minutes, so nothing is run unless a scratch directory is given:
+ * <pre>
+ * java -cp huffman-bench/target/benchmarks.jar HuffmanSource.bench.LargeInputCheck dir [bytes]
+ * </pre>
+ * The files are deleted when the check ends.
+ */
+public class LargeInputCheck {
+
+    /**
+     * The input size unless set otherwise.
+     */
+    public static final long DEFAULT_SIZE = 5L << 30;
+
+    // Every byte is 'a' except one in this many, so 'a' is over 7/8 of the input.
+    private static final int PERIOD = 8;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // The number of bytes checked at the end of the STORE_BLOCKS file.
+    private static final int RANGE_LENGTH = 1 << 20;
+
+    private static int failures;
+
+    // The number of times 'a' occurs in the input, counted as it is written.
+    private static long common;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("skipped: give a scratch directory with 6 GB free to run");
+            System.out.println("usage: java HuffmanSource.bench.LargeInputCheck dir [bytes]");
+            return;
+        }
+        File dir = new File(args[0]);
+        long size = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_SIZE;
+        File input = new File(dir, "large-input.bin");
+        File compressed = new File(dir, "large-input.hf");
+        try {
+            long crc = generate(input, size);
+            System.out.printf("%d bytes, 'a' %d times (%s 2^32)%n", size, common,
+                    common > 1L << 32 ? "more than" : "not more than");
+            int[] formats = {IHuffConstants.STORE_CUSTOM, IHuffConstants.STORE_TREE,
+                IHuffConstants.STORE_BLOCKS};
+            for (int format : formats) {
+                check(input, compressed, size, crc, format);
+            }
+            checkCountsRefused(input);
+        } finally {
+            input.delete();
+            compressed.delete();
+        }
+        System.out.println(failures == 0 ? "all checks passed" : failures + " checks failed");
+        if (failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param position the position of a byte in the input
+     * @return the byte at that position
+     */
+    private static int byteAt(long position) {
+        if (position % PERIOD != PERIOD - 1) {
+            return 'a';
+        }
+        return (int) ((position * 0x9E3779B97F4A7C15L) >>> 56);
+    }
+
+    /**
+     * Writes the input, counting the times 'a' occurs in it.
+     * @param file the file to write
+     * @param size the number of bytes
+     * @return the CRC-32 of the input
+     * @throws IOException if writing fails
+     */
+    private static long generate(File file, long size) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (OutputStream out = new FileOutputStream(file)) {
+            for (long position = 0; position < size; position += buffer.length) {
+                int length = (int) Math.min(buffer.length, size - position);
+                for (int i = 0; i < length; i++) {
+                    buffer[i] = (byte) byteAt(position + i);
+                    common += buffer[i] == 'a' ? 1 : 0;
+                }
+                crc.update(buffer, 0, length);
+                out.write(buffer, 0, length);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Compresses and uncompresses the input in one format and checks the counts.
+     */
+    private static void check(File input, File compressed, long size, long crc, int format)
+            throws IOException {
+        String name = formatName(format);
+        SimpleHuffProcessor processor = processor();
+        long saved;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(input))) {
+            saved = processor.preprocessCompressLong(in, format);
+        }
+        long written;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(input));
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(compressed))) {
+            written = processor.compressLong(in, out, true);
+        }
+        expect(name + " bits saved", size * 8 - written, saved);
+        expect(name + " bytes written", (written + 7) / 8, compressed.length());
+        CheckedOutputStream check = new CheckedOutputStream(OutputStream.nullOutputStream(),
+                new CRC32());
+        long bits;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(compressed))) {
+            bits = processor().uncompressLong(in, check);
+        }
+        expect(name + " bits uncompressed", size * 8, bits);
+        expect(name + " CRC", crc, check.getChecksum().getValue());
+        if (format == IHuffConstants.STORE_BLOCKS) {
+            long offset = Math.max(0, size - RANGE_LENGTH - 12345);
+            ByteArrayOutputStream range = new ByteArrayOutputStream();
+            long rangeBits = processor().uncompress(compressed, range, offset, RANGE_LENGTH);
+            byte[] bytes = range.toByteArray();
+            int wrong = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                if ((bytes[i] & 0xFF) != byteAt(offset + i)) {
+                    wrong++;
+                }
+            }
+            expect(name + " range bits", Math.min(RANGE_LENGTH, size - offset) * 8, rangeBits);
+            expect(name + " range bytes wrong", 0, wrong);
+        }
+        System.out.printf("%s: %d bits saved, %d bits written%n", name, saved, written);
+    }
+
+    /**
+     * Checks that STORE_COUNTS is refused when a count does not fit its header.
+     */
+    private static void checkCountsRefused(File input) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(input))) {
+            processor().preprocessCompressLong(in, IHuffConstants.STORE_COUNTS);
+            if (common > Integer.MAX_VALUE) {
+                fail("STORE_COUNTS was not refused");
+            } else {
+                System.out.println("STORE_COUNTS: counts fit, not refused");
+            }
+        } catch (IOException e) {
+            if (common > Integer.MAX_VALUE && e.getMessage().contains(Long.toString(common))) {
+                System.out.println("STORE_COUNTS: refused, " + e.getMessage());
+            } else {
+                fail("STORE_COUNTS: " + e);
+            }
+        }
+    }
+
+    private static SimpleHuffProcessor processor() {
+        SimpleHuffProcessor processor = new SimpleHuffProcessor();
+        processor.setViewer(new TextHuffViewer());
+        return processor;
+    }
+
+    private static String formatName(int format) {
+        switch (format) {
+            case IHuffConstants.STORE_CUSTOM:
+                return "STORE_CUSTOM";
+            case IHuffConstants.STORE_TREE:
+                return "STORE_TREE";
+            default:
+                return "STORE_BLOCKS";
+        }
+    }
+
+    private static void expect(String what, long expected, long actual) {
+        if (expected != actual) {
+            fail(what + ": expected " + expected + ", got " + actual);
+        }
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAILED " + message);
+        failures++;
+    }
+}
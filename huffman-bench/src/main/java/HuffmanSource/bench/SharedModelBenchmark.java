@@ -0,0 +1,90 @@
+package HuffmanSource.bench;
+
+import HuffmanSource.HuffCodec;
+import HuffmanSource.HuffModel;
+import HuffmanSource.IHuffConstants;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times many threads compressing and uncompressing with one shared
+ * HuffModel through HuffCodec. The model is trained once on the whole
+ * corpus and every thread codes every file of the corpus against it, so
+ * the threads share nothing but read-only data. Run with <tt>-t 1</tt>,
+ * <tt>-t 2</tt> and so on up to the number of processors: the megabytes
+ * rate, summed over the threads, should grow in proportion.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SharedModelBenchmark {
+
+    @Param({"calgary", "waterloo", "BooksAndHTML"})
+    public String corpus;
+
+    @Param({"STORE_COUNTS", "STORE_COMPACT_COUNTS", "STORE_TREE", "STORE_CUSTOM"})
+    public String format;
+
+    private byte[][] files;
+    private long size;
+    private HuffModel model;
+    private byte[][] compressed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        files = Corpus.load(corpus);
+        size = Corpus.size(files);
+        long[] counts = new long[IHuffConstants.ALPH_SIZE];
+        for (byte[] file : files) {
+            for (byte b : file) {
+                counts[b & 0xFF]++;
+            }
+        }
+        model = HuffModel.fromCounts(counts, Corpus.headerFormat(format));
+        compressed = new byte[files.length][];
+        for (int i = 0; i < files.length; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            HuffCodec.compress(model, files[i], files[i].length, out);
+            compressed[i] = out.toByteArray();
+        }
+    }
+
+    @Benchmark
+    public long compress(Throughput throughput) throws IOException {
+        long written = 0;
+        for (byte[] file : files) {
+            written += HuffCodec.compress(model, file, file.length, OutputStream.nullOutputStream());
+        }
+        throughput.add(size);
+        return written;
+    }
+
+    @Benchmark
+    public long decompress(Throughput throughput) throws IOException {
+        long written = 0;
+        for (byte[] file : compressed) {
+            written += HuffCodec.decompress(model, new ByteArrayInputStream(file),
+                    OutputStream.nullOutputStream());
+        }
+        throughput.add(size);
+        return written;
+    }
+}
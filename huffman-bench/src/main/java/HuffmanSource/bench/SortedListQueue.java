@@ -0,0 +1,32 @@
+package HuffmanSource.bench;
+
+import java.util.ArrayList;
+
+/**
+ * The priority queue Huffman trees were built with before HuffTree: an
+ * ArrayList kept in descending order, scanned for the insert position and
+ * shifted. Equal elements leave in the order they were added. It is kept
+ * as the reference the benchmarks compare with.
+ */
+class SortedListQueue<E extends Comparable<? super E>> {
+    private final ArrayList<E> con = new ArrayList<>();
+
+    void enqueue(E data) {
+        int index = con.size();
+        for (int i = 0; i < con.size(); i++) {
+            if (con.get(i).compareTo(data) <= 0) {
+                index = i;
+                break;
+            }
+        }
+        con.add(index, data);
+    }
+
+    E dequeue() {
+        return con.isEmpty() ? null : con.remove(con.size() - 1);
+    }
+
+    int size() {
+        return con.size();
+    }
+}
@@ -0,0 +1,119 @@
+package HuffmanSource.bench;
+
+import HuffmanSource.BitInputStream;
+import HuffmanSource.BitOutputStream;
+import HuffmanSource.IHuffConstants;
+import HuffmanSource.TreeNode;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+
+/**
+ * The encoder Compressor had before its codes were kept in arrays, kept as
+ * the reference EncodeBenchmark compares with. Each code is a String of
+ * '0' and '1' in a HashMap, built by concatenating the path down the
+ * tree, and compress looks up the code of every byte and writes it one
+ * writeBits(1) call per character. Only STORE_COUNTS and STORE_TREE files
+ * are written, byte for byte the same as Compressor writes them.
+ */
+class StringMapEncoder implements IHuffConstants {
+
+    private final int headerFormat;
+    private final int[] counts = new int[ALPH_SIZE + 1];
+    private final HashMap<Integer, String> codeMap = new HashMap<>();
+    private final TreeNode root;
+    private final int totalNodes;
+
+    /**
+     * Counts the bytes of in and builds their codes.
+     * @param in the data to compress later
+     * @param headerFormat STORE_COUNTS or STORE_TREE
+     * @throws IOException if reading fails
+     */
+    StringMapEncoder(InputStream in, int headerFormat) throws IOException {
+        this.headerFormat = headerFormat;
+        BitInputStream bits = new BitInputStream(in);
+        for (int value = bits.readBits(BITS_PER_WORD); value != -1;
+                value = bits.readBits(BITS_PER_WORD)) {
+            counts[value]++;
+        }
+        counts[PSEUDO_EOF]++;
+        SortedListQueue<TreeNode> queue = new SortedListQueue<>();
+        for (int value = 0; value < counts.length; value++) {
+            if (counts[value] != 0) {
+                queue.enqueue(new TreeNode(value, counts[value]));
+            }
+        }
+        while (queue.size() > 1) {
+            TreeNode first = queue.dequeue();
+            TreeNode second = queue.dequeue();
+            queue.enqueue(new TreeNode(first, -1, second));
+        }
+        root = queue.dequeue();
+        totalNodes = fillCodes(root, "");
+    }
+
+    /**
+     * Writes the header and the codes of the bytes of in, then the code of
+     * PSEUDO_EOF.
+     * @param in the same data the encoder was built from
+     * @param out the stream to write the compressed data to
+     * @return the number of bits written
+     * @throws IOException if reading or writing fails
+     */
+    long compress(InputStream in, OutputStream out) throws IOException {
+        BitOutputStream output = new BitOutputStream(out);
+        long written = 2 * BITS_PER_INT;
+        output.writeBits(BITS_PER_INT, MAGIC_NUMBER);
+        output.writeBits(BITS_PER_INT, headerFormat);
+        if (headerFormat == STORE_COUNTS) {
+            for (int value = 0; value < ALPH_SIZE; value++) {
+                output.writeBits(BITS_PER_INT, counts[value]);
+                written += BITS_PER_INT;
+            }
+        } else if (headerFormat == STORE_TREE) {
+            output.writeBits(BITS_PER_INT, totalNodes + codeMap.size() * (BITS_PER_WORD + 1));
+            written += BITS_PER_INT + writeTree(root, output);
+        }
+        BitInputStream input = new BitInputStream(in);
+        for (int value = input.readBits(BITS_PER_WORD); value != -1;
+                value = input.readBits(BITS_PER_WORD)) {
+            written += writeCode(codeMap.get(value), output);
+        }
+        written += writeCode(codeMap.get(PSEUDO_EOF), output);
+        output.close();
+        return written;
+    }
+
+    /**
+     * Puts the code of each leaf under node in codeMap.
+     * @param node the root of the subtree
+     * @param path the code of node
+     * @return the number of nodes in the subtree
+     */
+    private int fillCodes(TreeNode node, String path) {
+        if (node.isLeaf()) {
+            codeMap.put(node.getValue(), path);
+            return 1;
+        }
+        return 1 + fillCodes(node.getLeft(), path + "0") + fillCodes(node.getRight(), path + "1");
+    }
+
+    private static int writeTree(TreeNode node, BitOutputStream output) {
+        if (node.isLeaf()) {
+            output.writeBits(1, 1);
+            output.writeBits(BITS_PER_WORD + 1, node.getValue());
+            return BITS_PER_WORD + 2;
+        }
+        output.writeBits(1, 0);
+        return 1 + writeTree(node.getLeft(), output) + writeTree(node.getRight(), output);
+    }
+
+    private static int writeCode(String code, BitOutputStream output) {
+        for (int i = 0; i < code.length(); i++) {
+            output.writeBits(1, code.charAt(i) - '0');
+        }
+        return code.length();
+    }
+}
@@ -0,0 +1,41 @@
+package HuffmanSource.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the input megabytes each benchmark handles. JMH reports the
+ * counter as a rate next to the operation rate, so it reads as MB/s.
+ * Each operation handles a whole corpus, so its size is added per call.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+
+    // Number of bytes in a megabyte as reported.
+    private static final double BYTES_PER_MB = 1e6;
+
+    /**
+     * Megabytes of input handled so far in this iteration.
+     */
+    public double megabytes;
+
+    /**
+     * Starts each iteration from zero.
+     */
+    @Setup(Level.Iteration)
+    public void clear() {
+        megabytes = 0;
+    }
+
+    /**
+     * Counts <tt>bytes</tt> bytes handled.
+     * @param bytes the number of input bytes handled
+     */
+    public void add(long bytes) {
+        megabytes += bytes / BYTES_PER_MB;
+    }
+}
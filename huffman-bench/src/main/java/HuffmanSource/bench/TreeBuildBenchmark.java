@@ -0,0 +1,204 @@
+package HuffmanSource.bench;
+
+import HuffmanSource.HuffTree;
+import HuffmanSource.TreeNode;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times building a whole Huffman tree from <tt>n</tt> values with random
+ * counts with HuffTree.fromCounts, and by merging TreeNodes in the sorted
+ * list the trees used to be built with. The list is quadratic, so it is
+ * only run up to 65,537 values.
+ * <P>
+ * Running this class instead of JMH checks that HuffTree.fromCounts gives
+ * every value the same code as the sorted list for random count tables,
+ * many of them full of equal counts, some with more values than a byte
+ * alphabet:
+ * <pre>
+ * java -cp huffman-bench/target/benchmarks.jar HuffmanSource.bench.TreeBuildBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeBuildBenchmark {
+
+    // The number of values in most checked tables, every byte and PSEUDO_EOF.
+    private static final int VALUES = 257;
+
+    // The largest count in the checked tables.
+    private static final int MAX_COUNT = 1 << 16;
+
+    // The largest count in the timed tables, so the root of a million
+    // values still fits the int count of a TreeNode.
+    private static final int MAX_TIMED_COUNT = 2048;
+
+    // The number of values in the checked tables larger than a byte alphabet.
+    private static final int LARGE_VALUES = 5000;
+
+    /**
+     * Counts for HuffTree, up to a million values.
+     */
+    @State(Scope.Thread)
+    public static class Counts {
+        @Param({"257", "65537", "1048576"})
+        public int n;
+
+        long[] counts;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            counts = Arrays.stream(randomCounts(new Random(n), n, MAX_TIMED_COUNT))
+                    .asLongStream().toArray();
+        }
+    }
+
+    /**
+     * Counts for the sorted list, few enough values to finish.
+     */
+    @State(Scope.Thread)
+    public static class ListCounts {
+        @Param({"257", "65537"})
+        public int n;
+
+        int[] counts;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            counts = randomCounts(new Random(n), n, MAX_TIMED_COUNT);
+        }
+    }
+
+    @Benchmark
+    public HuffTree huffTree(Counts counts) {
+        return HuffTree.fromCounts(counts.counts);
+    }
+
+    @Benchmark
+    public TreeNode sortedList(ListCounts counts) {
+        return listTree(counts.counts);
+    }
+
+    /**
+     * Builds the tree for counts by adding a leaf for each value that
+     * occurs to the sorted list in increasing order of value, then merging
+     * the two smallest nodes until one is left.
+     * @param counts the count of each value
+     * @return the root of the tree
+     */
+    private static TreeNode listTree(int[] counts) {
+        SortedListQueue<TreeNode> queue = new SortedListQueue<>();
+        for (int value = 0; value < counts.length; value++) {
+            if (counts[value] != 0) {
+                queue.enqueue(new TreeNode(value, counts[value]));
+            }
+        }
+        while (queue.size() > 1) {
+            TreeNode first = queue.dequeue();
+            TreeNode second = queue.dequeue();
+            queue.enqueue(new TreeNode(first, -1, second));
+        }
+        return queue.dequeue();
+    }
+
+    /**
+     * @param random the source of the counts
+     * @param n the number of counts
+     * @param max the largest count
+     * @return n counts from 1 to max
+     */
+    private static int[] randomCounts(Random random, int n, int max) {
+        int[] counts = new int[n];
+        for (int i = 0; i < n; i++) {
+            counts[i] = 1 + random.nextInt(max);
+        }
+        return counts;
+    }
+
+    /**
+     * Builds trees for 20,000 random count tables both ways and checks
+     * that every value gets the same code. Each table leaves some values
+     * out, and every third draws its counts from only a few values, so
+     * most of them tie. Every hundredth table counts LARGE_VALUES values
+     * instead of a byte alphabet.
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        Random random = new Random(314);
+        int tables = 20000;
+        int mismatches = 0;
+        for (int table = 0; table < tables; table++) {
+            int[] counts = new int[table % 100 == 0 ? LARGE_VALUES : VALUES];
+            int max = table % 3 == 0 ? 4 : MAX_COUNT;
+            for (int value = 0; value < counts.length; value++) {
+                if (random.nextInt(4) != 0) {
+                    counts[value] = 1 + random.nextInt(max);
+                }
+            }
+            counts[random.nextInt(counts.length)] = 1;
+            if (!sameCodes(counts)) {
+                System.out.println("table " + table + " gives different codes");
+                mismatches++;
+            }
+        }
+        System.out.println(mismatches == 0 ? tables + " count tables, same codes"
+                : mismatches + " of " + tables + " count tables differ");
+        if (mismatches != 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param counts the count of each value
+     * @return true if both trees give every value the same code
+     */
+    private static boolean sameCodes(int[] counts) {
+        long[] codes = new long[counts.length];
+        int[] lengths = new int[counts.length];
+        HuffTree.fromCounts(counts).codes(codes, lengths);
+        long[] listCodes = new long[counts.length];
+        int[] listLengths = new int[counts.length];
+        listCodes(listTree(counts), 0, 0, listCodes, listLengths);
+        for (int value = 0; value < counts.length; value++) {
+            if (codes[value] != listCodes[value] || lengths[value] != listLengths[value]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fills in the code of each leaf under node, 0 for left and 1 for right.
+     * @param node the root of the subtree
+     * @param path the bits of the path to node
+     * @param depth the number of bits in the path
+     * @param codes the code of each value
+     * @param lengths the code length of each value
+     */
+    private static void listCodes(TreeNode node, long path, int depth,
+            long[] codes, int[] lengths) {
+        if (node.isLeaf()) {
+            codes[node.getValue()] = path;
+            lengths[node.getValue()] = depth;
+        } else {
+            listCodes(node.getLeft(), path << 1, depth + 1, codes, lengths);
+            listCodes(node.getRight(), (path << 1) | 1, depth + 1, codes, lengths);
+        }
+    }
+}
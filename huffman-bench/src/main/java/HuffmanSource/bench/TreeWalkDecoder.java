@@ -0,0 +1,98 @@
+package HuffmanSource.bench;
+
+import HuffmanSource.BitInputStream;
+import HuffmanSource.BitOutputStream;
+import HuffmanSource.Decompressor;
+import HuffmanSource.IHuffConstants;
+import HuffmanSource.TreeNode;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The decoder Decompressor had before HuffDecodeTable, kept as the
+ * reference DecodeBenchmark compares with. It rebuilds the tree as TreeNode
+ * objects and walks it one readBits(1) call per bit of the data, writing
+ * each decoded byte with its own writeBits call. Only STORE_COUNTS and
+ * STORE_TREE files are read.
+ */
+class TreeWalkDecoder implements IHuffConstants {
+
+    /**
+     * Decodes a STORE_COUNTS or STORE_TREE stream.
+     * @param input the compressed data
+     * @param output the stream to write the decoded data to
+     * @return the number of bits written, -1 for an unknown format, or
+     * Decompressor.NO_PSEUDO_ERROR_CODE if the data ends before PSEUDO_EOF
+     * @throws IOException if reading or writing fails
+     */
+    static long decompress(InputStream input, OutputStream output) throws IOException {
+        BitInputStream in = new BitInputStream(input);
+        if (in.readBits(BITS_PER_INT) != MAGIC_NUMBER) {
+            return -1;
+        }
+        int format = in.readBits(BITS_PER_INT);
+        TreeNode root;
+        if (format == STORE_COUNTS) {
+            root = treeFromCounts(in);
+        } else if (format == STORE_TREE) {
+            root = treeFromStructure(in, new int[] {in.readBits(BITS_PER_INT)});
+        } else {
+            return -1;
+        }
+        return decode(in, output, root);
+    }
+
+    private static TreeNode treeFromCounts(BitInputStream in) throws IOException {
+        SortedListQueue<TreeNode> queue = new SortedListQueue<>();
+        for (int value = 0; value < ALPH_SIZE; value++) {
+            int count = in.readBits(BITS_PER_INT);
+            if (count != 0) {
+                queue.enqueue(new TreeNode(value, count));
+            }
+        }
+        queue.enqueue(new TreeNode(PSEUDO_EOF, 1));
+        while (queue.size() > 1) {
+            TreeNode left = queue.dequeue();
+            TreeNode right = queue.dequeue();
+            queue.enqueue(new TreeNode(left, -1, right));
+        }
+        return queue.dequeue();
+    }
+
+    private static TreeNode treeFromStructure(BitInputStream in, int[] bitsLeft)
+            throws IOException {
+        if (bitsLeft[0] == 0) {
+            return null;
+        }
+        bitsLeft[0]--;
+        if (in.readBits(1) == 1) {
+            return new TreeNode(in.readBits(BITS_PER_WORD + 1), 0);
+        }
+        TreeNode node = new TreeNode(-1, 0);
+        node.setLeft(treeFromStructure(in, bitsLeft));
+        node.setRight(treeFromStructure(in, bitsLeft));
+        return node;
+    }
+
+    private static long decode(BitInputStream in, OutputStream out, TreeNode root)
+            throws IOException {
+        BitOutputStream bitOut = new BitOutputStream(out);
+        TreeNode node = root;
+        long written = 0;
+        for (int bit = in.readBits(1); bit != -1; bit = in.readBits(1)) {
+            if (node.isLeaf()) {
+                bitOut.writeBits(BITS_PER_WORD, node.getValue());
+                node = root;
+                written += BITS_PER_WORD;
+            }
+            node = bit == 0 ? node.getLeft() : node.getRight();
+            if (node.getValue() == PSEUDO_EOF) {
+                bitOut.close();
+                return written;
+            }
+        }
+        bitOut.close();
+        return Decompressor.NO_PSEUDO_ERROR_CODE;
+    }
+}